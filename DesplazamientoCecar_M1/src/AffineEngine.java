@@ -0,0 +1,37 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * La clase {@code AffineEngine} implementa el cifrado afin sobre el {@link Alphabet}: el caracter con indice
+ * {@code x} se sustituye por el de indice {@code (a * x + b) mod n}, donde {@code n} es el tamano del alfabeto.
+ *
+ * <p>Para que el cifrado se pueda deshacer, {@code a} debe ser coprimo con {@code n}; la tabla de descifrado es la
+ * inversa de la de cifrado, por lo que no hace falta calcular el inverso modular. La traduccion es exacta (sin la
+ * regla de minusculas del cifrado Cesar).</p>
+ * <pre>EJEMPLO: con a = 1 y b = 3 el resultado es el mismo que un desplazamiento de 3 sin la regla de minusculas.</pre>
+ */
+public class AffineEngine extends TableCipherEngine {
+
+    /**
+     * Constructor de la clase {@code AffineEngine}.
+     *
+     * @param alphabet El alfabeto sobre el que se sustituyen los caracteres.
+     * @param a El multiplicador, coprimo con el tamano del alfabeto.
+     * @param b El desplazamiento.
+     * @throws IllegalArgumentException Si {@code a} no es coprimo con el tamano del alfabeto.
+     */
+    public AffineEngine(Alphabet alphabet, int a, int b) {
+        super(alphabet, mapping(alphabet, a, b));
+    }
+
+    private static IntUnaryOperator mapping(Alphabet alphabet, int a, int b) {
+        int length = alphabet.size();
+        if (gcd(Math.floorMod(a, length), length) != 1) {
+            throw new IllegalArgumentException("El multiplicador " + a + " debe ser coprimo con " + length + ".");
+        }
+        return x -> (int) Math.floorMod((long) a * x + b, (long) length);
+    }
+
+    private static int gcd(int x, int y) {
+        return y == 0 ? x : gcd(y, x % y);
+    }
+}
@@ -1,5 +1,9 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 /**
  * La clase {@code Alphabet} representa un alfabeto combinado que incluye letras
@@ -8,47 +12,166 @@ import java.util.Map;
  * <p>Esta clase proporciona metodos para obtener el indice de un caracter,
  * obtener un caracter basado en su indice, verificar si un caracter es una letra
  * y obtener la cadena del alfabeto.</p>
+ *
+ * <p>Ademas del alfabeto predeterminado se pueden cargar otros (cirilico, griego, Latin-1, emojis...) desde un
+ * archivo de definicion con {@link #load(Path)}. Los caracteres se manejan por code point: un caracter fuera del
+ * plano basico (como un emoji) es un solo elemento del alfabeto aunque en UTF-16 ocupe dos {@code char}. Para que
+ * cifrar no cambie la longitud del texto, los caracteres de un alfabeto deben ser todos del plano basico o todos
+ * suplementarios.</p>
  */
 public class Alphabet {
-    private final String alphabetString = "ABCDEFGHIJKLMNÑOPQRSTUVWXYZ"
+    private static final String DEFAULT_ALPHABET = "ABCDEFGHIJKLMNÑOPQRSTUVWXYZ"
             + "abcdefghijklmnñopqrstuvwxyz"
             + "àâäçéèêëîïôùûü"
             + "0123456789"
             + ".,;:!?\"'()[]{}<>-+/=@#$%^&*~«|»¿"
             + " ";
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PAGES = (Character.MAX_CODE_POINT >> PAGE_BITS) + 1;
+    private static final int[] EMPTY_PAGE = filledPage(-1);    // Pagina compartida sin caracteres del alfabeto
+    private static final Alphabet DEFAULT = new Alphabet(DEFAULT_ALPHABET);
 
-    private final Map<Character, Integer> indexMap;
+    private final String alphabetString;
+    private final int[] codePoints;
+    private final int[][] indexPages;                           // indexPages[cp >> 8][cp & 0xFF]: indice o -1
+    private final boolean supplementary;
+    private final char[][] shiftTables;
+    private final int[][][] supplementaryShiftTables;
 
     /**
-     * Constructor de la clase {@code Alphabet}.
+     * Constructor de la clase {@code Alphabet} con el alfabeto predeterminado.
      *
-     * <p>Este constructor inicializa el mapa de indices {@code indexMap}, que
+     * <p>Este constructor inicializa la tabla de indices {@code indexPages}, que
      * asocia cada caracter del alfabeto con su indice de posicion correspondiente en la
      * cadena {@code alphabetString}.</p>
      * <pre>EJEMPLO: Si alphabetString tiene el caracter 'A' en la posicion 0,
-     * se ejecuta indexMap.put('A', 0);.
+     * se guarda indexPages[0]['A'] = 0.
      * </pre>
      * <p>Esto permite un acceso rapido a los indices de los caracteres.</p>
      */
     public Alphabet() {
-        this.indexMap = new HashMap<>(); //inicializamos Hm(k,v)
-        for (int i = 0; i < alphabetString.length(); i++) {
-            indexMap.put(alphabetString.charAt(i), i);
+        this(DEFAULT_ALPHABET);
+    }
+
+    /**
+     * Obtiene el alfabeto predeterminado, que se construye una sola vez al cargar la clase y se comparte en todo el
+     * programa. Un alfabeto no cambia despues de construirse y sus tablas de desplazamiento se crean bajo demanda de
+     * forma sincronizada, asi que compartirlo entre clases e hilos es seguro y evita repetir su tabla de indices y
+     * sus tablas en cada {@link Cifrar}, {@link Descifrar} o {@link MappedFileCipher}.
+     *
+     * @return El alfabeto predeterminado compartido.
+     */
+    public static Alphabet getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Constructor de la clase {@code Alphabet} con los caracteres indicados, en orden.
+     *
+     * <p>La tabla de indices tiene dos niveles: una pagina por cada 256 code points y la posicion dentro de la
+     * pagina. Las paginas sin caracteres del alfabeto comparten una sola pagina vacia, por lo que buscar un indice
+     * son dos accesos a arreglos, sin objetos {@code Character}, para cualquier code point.</p>
+     *
+     * @param alphabetString Los caracteres del alfabeto.
+     * @throws IllegalArgumentException Si esta vacio, repite un caracter, contiene surrogates sueltos o mezcla
+     *                                  caracteres del plano basico con caracteres suplementarios.
+     */
+    public Alphabet(String alphabetString) {
+        this.alphabetString = alphabetString;
+        this.codePoints = alphabetString.codePoints().toArray();
+        if (codePoints.length == 0) {
+            throw new IllegalArgumentException("El alfabeto no puede estar vacio.");
+        }
+        this.supplementary = Character.isSupplementaryCodePoint(codePoints[0]);
+        this.indexPages = new int[PAGES][];
+        Arrays.fill(indexPages, EMPTY_PAGE);
+        for (int i = 0; i < codePoints.length; i++) {
+            int codePoint = codePoints[i];
+            if (Character.isBmpCodePoint(codePoint) && Character.isSurrogate((char) codePoint)) {
+                throw new IllegalArgumentException("El alfabeto contiene un surrogate suelto: " + hex(codePoint));
+            }
+            if (Character.isSupplementaryCodePoint(codePoint) != supplementary) {
+                throw new IllegalArgumentException("El alfabeto mezcla caracteres del plano basico y suplementarios ("
+                        + hex(codePoints[0]) + " y " + hex(codePoint) + "): el cifrado cambiaria la longitud del texto.");
+            }
+            if (getIndex(codePoint) >= 0) {
+                throw new IllegalArgumentException("El caracter " + hex(codePoint) + " esta repetido en el alfabeto.");
+            }
+            int page = codePoint >> PAGE_BITS;
+            if (indexPages[page] == EMPTY_PAGE) {
+                indexPages[page] = filledPage(-1);
+            }
+            indexPages[page][codePoint & PAGE_MASK] = i;
         }
+        this.shiftTables = new char[codePoints.length][];  // Una tabla por desplazamiento, creada bajo demanda
+        this.supplementaryShiftTables = new int[codePoints.length][][];
+    }
+
+    /**
+     * Carga un alfabeto desde un archivo de definicion en UTF-8.
+     *
+     * <p>Cada linea contiene caracteres literales o code points {@code U+XXXX} y rangos {@code U+XXXX..U+YYYY}; los
+     * espacios en blanco se ignoran (el espacio se escribe {@code U+0020}) y las lineas que empiezan con {@code #}
+     * son comentarios. El orden de los caracteres en el alfabeto es el del archivo.</p>
+     * <pre>
+     * # Alfabeto griego
+     * U+0391..U+03A1 U+03A3..U+03A9
+     * αβγδεζηθικλμνξοπρστυφχψω
+     * U+0020
+     * </pre>
+     *
+     * @param definitionPath La ruta del archivo de definicion.
+     * @return El alfabeto definido en el archivo.
+     * @throws IOException Si no se puede leer el archivo.
+     * @throws IllegalArgumentException Si la definicion no es valida (ver {@link #Alphabet(String)}).
+     */
+    public static Alphabet load(Path definitionPath) throws IOException {
+        StringBuilder alphabet = new StringBuilder();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(definitionPath, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            for (String token : trimmed.split("\\s+")) {
+                if (token.startsWith("U+")) {
+                    appendRange(alphabet, token, lineNumber);
+                } else {
+                    alphabet.append(token);                         // Caracteres literales
+                }
+            }
+        }
+        return new Alphabet(alphabet.toString());
     }
 
     /**
      * Obtiene el indice de un caracter en el alfabeto.
      *
-     * <p>Este metodo busca el caracter proporcionado en el mapa de indices y
-     * devuelve su posicion en {@code alphabetString}. Si el caracter no esta
+     * <p>Este metodo busca el caracter proporcionado en la tabla de indices y
+     * devuelve su posicion en el alfabeto. Si el caracter no esta
      * presente, se devuelve -1.</p>
      *
      * @param character El caracter del cual se desea obtener el indice.
      * @return El indice del caracter en el alfabeto, o -1 si el caracter no esta presente.
      */
     public int getIndex(char character) {
-        return indexMap.getOrDefault(character, -1);
+        return indexPages[character >> PAGE_BITS][character & PAGE_MASK];
+    }
+
+    /**
+     * Obtiene el indice de un code point en el alfabeto.
+     *
+     * @param codePoint El code point del cual se desea obtener el indice.
+     * @return El indice del code point en el alfabeto, o -1 si no esta presente o no es un code point valido.
+     */
+    public int getIndex(int codePoint) {
+        if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT) {
+            return -1;
+        }
+        return indexPages[codePoint >> PAGE_BITS][codePoint & PAGE_MASK];
     }
 
     /**
@@ -61,14 +184,34 @@ public class Alphabet {
      * @param isLowerCase {@code true} si se desea el caracter en minuscula, {@code false} para mayuscula.
      * @return El caracter correspondiente al indice.
      * @throws IndexOutOfBoundsException Si el indice esta fuera de los limites del alfabeto.
+     * @throws IllegalStateException Si el alfabeto es de caracteres suplementarios (ver {@link #getCodePoint}).
      */
     public char getCharacter(int index, boolean isLowerCase) {
-        if (index < 0 || index >= alphabetString.length()) {
+        if (supplementary) {
+            throw new IllegalStateException("El alfabeto tiene caracteres suplementarios; use getCodePoint.");
+        }
+        return (char) getCodePoint(index, isLowerCase);
+    }
+
+    /**
+     * Obtiene el code point correspondiente a un indice dado, con la misma regla de minusculas que
+     * {@link #getCharacter(int, boolean)}.
+     *
+     * @param index El indice del code point en el alfabeto.
+     * @param isLowerCase {@code true} si se desea el code point en minuscula.
+     * @return El code point correspondiente al indice.
+     * @throws IndexOutOfBoundsException Si el indice esta fuera de los limites del alfabeto.
+     */
+    public int getCodePoint(int index, boolean isLowerCase) {
+        if (index < 0 || index >= codePoints.length) {
             throw new IndexOutOfBoundsException("Indice fuera de los límites del alfabeto.");
         }
-        char character = alphabetString.charAt(index);  // Obtiene el carácter en el índice especificado.
-        return isLowerCase ?
-                Character.toLowerCase(character) : character;
+        int codePoint = codePoints[index];  // Obtiene el code point en el índice especificado.
+        if (!isLowerCase) {
+            return codePoint;
+        }
+        int lower = Character.toLowerCase(codePoint);   // La minuscula debe ocupar lo mismo en UTF-16
+        return Character.charCount(lower) == Character.charCount(codePoint) ? lower : codePoint;
     }
 
     /**
@@ -78,17 +221,212 @@ public class Alphabet {
      * @return {@code true} si el caracter es una letra, {@code false} en caso contrario.
      */
     public boolean isLetter(char character) {
-        return indexMap.containsKey(character);
+        return getIndex(character) >= 0;
+    }
+
+    /**
+     * Verifica si un code point pertenece al alfabeto.
+     *
+     * @param codePoint El code point a verificar.
+     * @return {@code true} si el code point esta en el alfabeto, {@code false} en caso contrario.
+     */
+    public boolean isLetter(int codePoint) {
+        return getIndex(codePoint) >= 0;
     }
 
     /**
      * Obtiene la cadena que representa el alfabeto.
      *
      * <p>Este metodo devuelve la cadena completa que contiene todos los caracteres
-     * del alfabeto, incluyendo letras, numeros y simbolos.</p>
+     * del alfabeto, incluyendo letras, numeros y simbolos. En un alfabeto de caracteres suplementarios la longitud
+     * de la cadena no es el tamano del alfabeto (ver {@link #size()}).</p>
      * @return La cadena del alfabeto.
      */
     public String getAlphabetString() {
         return alphabetString;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return El numero de caracteres (code points) del alfabeto.
+     */
+    public int size() {
+        return codePoints.length;
+    }
+
+    /**
+     * @return {@code true} si los caracteres del alfabeto estan fuera del plano basico y ocupan dos {@code char}.
+     */
+    public boolean isSupplementary() {
+        return supplementary;
+    }
+
+    /**
+     * Obtiene la tabla de traduccion para un desplazamiento dado.
+     *
+     * <p>La tabla tiene una entrada por cada valor posible de {@code char} (65536), de modo que cifrar un caracter
+     * se reduce a {@code tabla[caracter]}, sin buscar en la tabla de indices ni recalcular el modulo. Los caracteres
+     * que no pertenecen al alfabeto se traducen a si mismos. Las tablas se construyen la primera vez que se piden
+     * y se guardan por desplazamiento normalizado, por lo que un desplazamiento de 3 y uno de
+     * {@code 3 + size()} comparten la misma tabla. En un alfabeto de caracteres suplementarios esta tabla es la
+     * identidad y la traduccion esta en {@link #getSupplementaryShiftTable(int)}.</p>
+     * <pre>EJEMPLO: getShiftTable(3)['A'] == 'D'</pre>
+     * <p>La tabla devuelta es compartida y no debe modificarse.</p>
+     *
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres (puede ser negativo).
+     * @return La tabla de traduccion de 65536 entradas para ese desplazamiento.
+     */
+    public synchronized char[] getShiftTable(int desplazamiento) {
+        int normalizado = Math.floorMod(desplazamiento, codePoints.length);
+        char[] table = shiftTables[normalizado];
+        if (table == null) {
+            table = buildShiftTable(normalizado);
+            shiftTables[normalizado] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Obtiene la tabla de traduccion por code point de un desplazamiento, para alfabetos de caracteres
+     * suplementarios. Es una tabla de dos niveles como la de indices: {@code tabla[cp >> 8]} es {@code null} si
+     * ningun code point de esa pagina cambia y, si no, la pagina de 256 code points de destino. Se aplica la misma
+     * regla de minusculas que en {@link #getShiftTable(int)}.
+     * <p>La tabla devuelta es compartida y no debe modificarse.</p>
+     *
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres (puede ser negativo).
+     * @return La tabla de traduccion, o {@code null} si el alfabeto es del plano basico.
+     */
+    public synchronized int[][] getSupplementaryShiftTable(int desplazamiento) {
+        if (!supplementary) {
+            return null;
+        }
+        int normalizado = Math.floorMod(desplazamiento, codePoints.length);
+        int[][] table = supplementaryShiftTables[normalizado];
+        if (table == null) {
+            table = buildSupplementaryTable(i -> (i + normalizado) % codePoints.length, true);
+            supplementaryShiftTables[normalizado] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Construye una tabla de traduccion a partir de una funcion sobre los indices del alfabeto.
+     *
+     * <p>A diferencia de {@link #getShiftTable(int)}, no se aplica la regla de minusculas de
+     * {@link #getCharacter(int, boolean)}: el caracter en la posicion {@code i} se traduce exactamente al caracter en
+     * la posicion {@code indexMapping(i)}. Si la funcion es una permutacion de los indices, la tabla tambien lo es y
+     * se puede invertir para descifrar. Los caracteres que no pertenecen al alfabeto se traducen a si mismos, por lo
+     * que en un alfabeto de caracteres suplementarios la tabla es la identidad (ver
+     * {@link #getSupplementaryTranslationTable(IntUnaryOperator)}).</p>
+     * <pre>EJEMPLO: getTranslationTable(i -> (i + 3) % 111)['A'] == 'D'</pre>
+     *
+     * @param indexMapping La funcion que da el indice de destino de cada indice del alfabeto.
+     * @return Una tabla de traduccion nueva de 65536 entradas.
+     * @throws IndexOutOfBoundsException Si la funcion devuelve un indice fuera del alfabeto.
+     */
+    public char[] getTranslationTable(IntUnaryOperator indexMapping) {
+        char[] table = identityTable();
+        if (!supplementary) {
+            for (int i = 0; i < codePoints.length; i++) {
+                table[codePoints[i]] = (char) getCodePoint(indexMapping.applyAsInt(i), false);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Construye una tabla de traduccion por code point (ver {@link #getSupplementaryShiftTable(int)}) a partir de
+     * una funcion sobre los indices del alfabeto, sin la regla de minusculas.
+     *
+     * @param indexMapping La funcion que da el indice de destino de cada indice del alfabeto.
+     * @return Una tabla nueva, o {@code null} si el alfabeto es del plano basico.
+     * @throws IndexOutOfBoundsException Si la funcion devuelve un indice fuera del alfabeto.
+     */
+    public int[][] getSupplementaryTranslationTable(IntUnaryOperator indexMapping) {
+        return supplementary ? buildSupplementaryTable(indexMapping, false) : null;
+    }
+
+    /**
+     * Construye la tabla de traduccion para un desplazamiento ya normalizado.
+     *
+     * <p>Se respeta la misma regla que {@link #getCharacter(int, boolean)}: si el caracter original es minuscula,
+     * el caracter resultante se pasa a minuscula.</p>
+     *
+     * @param desplazamiento El desplazamiento en el rango {@code [0, size())}.
+     * @return La tabla de traduccion.
+     */
+    private char[] buildShiftTable(int desplazamiento) {
+        char[] table = identityTable();
+        if (supplementary) {
+            return table;                                   // Ningun char del plano basico cambia
+        }
+        int length = codePoints.length;
+        for (int i = 0; i < length; i++) {
+            char character = (char) codePoints[i];
+            table[character] = getCharacter((i + desplazamiento) % length, Character.isLowerCase(character));
+        }
+        return table;
+    }
+
+    /**
+     * Construye una tabla de traduccion por code point; solo se crean las paginas que contienen caracteres del
+     * alfabeto.
+     */
+    private int[][] buildSupplementaryTable(IntUnaryOperator indexMapping, boolean lowerCaseRule) {
+        int[][] table = new int[PAGES][];
+        for (int i = 0; i < codePoints.length; i++) {
+            int codePoint = codePoints[i];
+            int page = codePoint >> PAGE_BITS;
+            if (table[page] == null) {
+                table[page] = identityPage(page);
+            }
+            boolean lower = lowerCaseRule && Character.isLowerCase(codePoint);
+            table[page][codePoint & PAGE_MASK] = getCodePoint(indexMapping.applyAsInt(i), lower);
+        }
+        return table;
+    }
+
+    /**
+     * Agrega al alfabeto un code point {@code U+XXXX} o un rango {@code U+XXXX..U+YYYY} del archivo de definicion.
+     */
+    private static void appendRange(StringBuilder alphabet, String token, int lineNumber) {
+        String[] bounds = token.split("\\.\\.", 2);
+        try {
+            int first = Integer.parseInt(bounds[0].substring(2), 16);
+            int last = bounds.length > 1 ? Integer.parseInt(bounds[1].replaceFirst("^U\\+", ""), 16) : first;
+            if (first > last || !Character.isValidCodePoint(last)) {
+                throw new IllegalArgumentException("Rango no valido en la linea " + lineNumber + ": " + token);
+            }
+            for (int codePoint = first; codePoint <= last; codePoint++) {
+                alphabet.appendCodePoint(codePoint);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Code point no valido en la linea " + lineNumber + ": " + token);
+        }
+    }
+
+    private static char[] identityTable() {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = (char) c;                            // Por defecto cada caracter se queda igual
+        }
+        return table;
+    }
+
+    private static int[] identityPage(int page) {
+        int[] codePoints = new int[PAGE_SIZE];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            codePoints[i] = (page << PAGE_BITS) | i;
+        }
+        return codePoints;
+    }
+
+    private static int[] filledPage(int value) {
+        int[] page = new int[PAGE_SIZE];
+        Arrays.fill(page, value);
+        return page;
+    }
+
+    private static String hex(int codePoint) {
+        return String.format("U+%04X", codePoint);
+    }
+}
@@ -0,0 +1,347 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * La clase {@code BatchEncryptor} cifra todos los archivos de un directorio (incluyendo subdirectorios).
+ *
+ * <p>Los archivos se reparten en un grupo acotado de hilos: la cola de tareas tiene un tamano limitado y, cuando se
+ * llena, el hilo que recorre el directorio cifra el archivo el mismo, por lo que nunca hay mas de unas pocas tareas
+ * pendientes en memoria aunque el directorio tenga decenas de miles de archivos.</p>
+ *
+ * <p>Los archivos cifrados se guardan en {@code Files/lote_<identificador>/} conservando la estructura de carpetas, y en
+ * lugar de un archivo {@code proper_*.txt} por archivo se escribe un unico manifiesto en
+ * {@code Properties/manifest_<identificador>.txt} con una linea por archivo:</p>
+ * <pre>
+ * Original File Path	Encrypted File Path	Desplazamiento
+ * </pre>
+ * <p>Ademas, cada archivo cifrado se registra en el {@link PropertiesStore} para poder descifrarlo por su ruta.</p>
+ *
+ * <p>Con una {@link EncryptionCache} el cifrado es incremental: la salida es siempre
+ * {@code Files/lote_<directorio>_<ruta>_s<desplazamiento>/} y el manifiesto
+ * {@code Properties/manifest_<directorio>_<ruta>_s<desplazamiento>.txt}, donde {@code <ruta>} es un hash corto de la
+ * ruta absoluta del directorio, de modo que cada ejecucion sobre el mismo directorio escribe en las mismas rutas y dos
+ * directorios con el mismo nombre no comparten salida. Un archivo cuyo contenido ya se cifro con el mismo
+ * desplazamiento y alfabeto no se vuelve a cifrar: si su salida ya esta en su sitio no se toca, y si el mismo
+ * contenido se cifro en otra ruta (un archivo movido o duplicado) se copia esa salida. Los archivos de la carpeta de
+ * salida cuyo original ya no existe se borran al terminar. Asi, una ejecucion periodica solo trabaja en proporcion a
+ * lo que cambio.</p>
+ */
+public class BatchEncryptor {
+    private static final int QUEUE_PER_THREAD = 4;   // Tareas pendientes por hilo antes de frenar el recorrido
+
+    private final Cifrar cipher;
+    private final MyFileHandler fileHandler;
+    private final PropertiesStore propertiesStore;
+    private final int threads;
+    private final EncryptionCache cache;
+
+    /**
+     * Constructor de la clase {@code BatchEncryptor}.
+     *
+     * @param threads El numero de hilos que cifraran archivos en paralelo.
+     * @param propertiesStore El almacen donde se registra cada archivo cifrado.
+     */
+    public BatchEncryptor(int threads, PropertiesStore propertiesStore) {
+        this(threads, propertiesStore, new Cifrar());
+    }
+
+    /**
+     * Constructor de la clase {@code BatchEncryptor} con el {@link Cifrar} que se usa, por ejemplo uno con otro
+     * alfabeto.
+     *
+     * @param threads El numero de hilos que cifraran archivos en paralelo.
+     * @param propertiesStore El almacen donde se registra cada archivo cifrado.
+     * @param cipher El cifrador de los archivos.
+     */
+    public BatchEncryptor(int threads, PropertiesStore propertiesStore, Cifrar cipher) {
+        this(threads, propertiesStore, cipher, null);
+    }
+
+    /**
+     * Constructor de la clase {@code BatchEncryptor} incremental, que no vuelve a cifrar los archivos registrados en
+     * la cache.
+     *
+     * @param threads El numero de hilos que cifraran archivos en paralelo.
+     * @param propertiesStore El almacen donde se registra cada archivo cifrado.
+     * @param cipher El cifrador de los archivos.
+     * @param cache La cache de archivos cifrados, o {@code null} para cifrarlos todos.
+     */
+    public BatchEncryptor(int threads, PropertiesStore propertiesStore, Cifrar cipher, EncryptionCache cache) {
+        this.cipher = cipher;
+        this.fileHandler = new MyFileHandler();
+        this.propertiesStore = propertiesStore;
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    /**
+     * Cifra todos los archivos regulares de un directorio y escribe el manifiesto.
+     *
+     * <p>Al terminar muestra el numero de archivos procesados, los archivos por segundo y los megabytes por
+     * segundo. En el modo incremental tambien muestra los archivos sin cambios y los copiados, y guarda la
+     * cache.</p>
+     *
+     * @param inputDirectory El directorio que se va a cifrar.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @return La ruta del manifiesto, o {@code null} si no se pudo recorrer el directorio, escribir el manifiesto o
+     *         cifrar algun archivo.
+     */
+    public String encryptDirectory(String inputDirectory, int shift) {
+        Path root = Paths.get(inputDirectory);
+        String name;
+        if (cache != null) {
+            Path absolute = root.toAbsolutePath().normalize();
+            Path directoryName = absolute.getFileName();
+            name = (directoryName != null ? directoryName.toString() : "raiz") + "_"
+                    + Integer.toHexString(absolute.toString().hashCode()) + "_s" + shift;
+        } else {
+            name = MyFileHandler.uniqueId();
+        }
+        Path outputRoot = Paths.get("Files").resolve("lote_" + name);
+        Path manifestPath = Paths.get("Properties").resolve("manifest_" + name + ".txt");
+        String cipherKey = "cesar:" + shift + ":" + cipher.getAlphabet().size() + ":"
+                + Integer.toHexString(cipher.getAlphabet().getAlphabetString().hashCode());
+
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger unchanged = new AtomicInteger();
+        AtomicInteger copied = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        long start = System.nanoTime();
+
+        try {
+            Files.createDirectories(manifestPath.getParent());
+        } catch (IOException e) {
+            System.err.println("Error al crear la carpeta del manifiesto: " + e.getMessage());
+            return null;
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD), new ThreadPoolExecutor.CallerRunsPolicy());
+        boolean walked = false;
+        Set<Path> outputs = new HashSet<>();                    // Solo lo usa el hilo que recorre el directorio
+        try (BufferedWriter manifest = Files.newBufferedWriter(manifestPath)) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                manifest.write("Original File Path\tEncrypted File Path\tDesplazamiento\n");
+                walk.filter(Files::isRegularFile).forEach(input -> {
+                    Path output = outputRoot.resolve(root.relativize(input));
+                    outputs.add(output);
+                    executor.execute(() -> {
+                        Result result = cache != null
+                                ? encryptIncrementally(input, output, shift, cipherKey)
+                                : encryptFile(input, output, shift) ? Result.ENCRYPTED : Result.FAILED;
+                        if (result == Result.FAILED) {
+                            failed.incrementAndGet();
+                            return;
+                        }
+                        if (!writeManifestLine(manifest, input, output, shift)) {
+                            failed.incrementAndGet();                // El manifiesto debe tener todos los archivos
+                            return;
+                        }
+                        if (result == Result.UNCHANGED) {
+                            unchanged.incrementAndGet();            // Ya esta registrado en el almacen
+                            return;
+                        }
+                        propertiesStore.append(input.toString(), output.toString(), shift);
+                        if (result == Result.COPIED) {
+                            copied.incrementAndGet();
+                        } else {
+                            processed.incrementAndGet();
+                            bytes.addAndGet(input.toFile().length());
+                        }
+                    });
+                });
+                walked = true;
+            } finally {
+                awaitTermination(executor, !walked);            // Antes de cerrar el manifiesto en el que escriben
+            }
+        } catch (IOException | UncheckedIOException e) {   // UncheckedIOException: una carpeta que no se puede leer
+            System.err.println("Error al cifrar el directorio: " + e.getMessage());
+            return null;
+        } finally {
+            if (cache != null) {
+                cache.save();                                   // Tambien lo cifrado antes de un error
+            }
+        }
+
+        int removed = cache != null ? removeStaleOutputs(outputRoot, outputs) : 0;
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        System.out.printf("Archivos cifrados: %d (errores: %d) en %.2f s%n", processed.get(), failed.get(), seconds);
+        if (cache != null) {
+            System.out.printf("Sin cambios: %d, copiados de la cache: %d, eliminados: %d%n", unchanged.get(),
+                    copied.get(), removed);
+        }
+        System.out.printf("%.1f archivos/s, %.2f MB/s%n", processed.get() / seconds,
+                bytes.get() / (1024.0 * 1024.0) / seconds);
+        System.out.println("Manifiesto guardado en: " + manifestPath);
+        return failed.get() == 0 && !Thread.currentThread().isInterrupted() ? manifestPath.toString() : null;
+    }
+
+    /**
+     * Borra de la carpeta de salida de un lote incremental los archivos que no corresponden a ningun archivo del
+     * directorio de entrada, y las carpetas que quedan vacias.
+     *
+     * @param outputRoot La carpeta de salida.
+     * @param outputs Las salidas de los archivos que hay ahora en la entrada.
+     * @return El numero de archivos borrados.
+     */
+    private static int removeStaleOutputs(Path outputRoot, Set<Path> outputs) {
+        if (!Files.isDirectory(outputRoot)) {
+            return 0;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(outputRoot)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());   // El contenido antes que su carpeta
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error al revisar la carpeta de salida: " + e.getMessage());
+            return 0;
+        }
+        int removed = 0;
+        for (Path path : paths) {
+            try {
+                if (Files.isDirectory(path)) {
+                    if (!path.equals(outputRoot)) {
+                        try (Stream<Path> children = Files.list(path)) {
+                            if (children.findAny().isEmpty()) {
+                                Files.delete(path);
+                            }
+                        }
+                    }
+                } else if (!outputs.contains(path)) {
+                    Files.delete(path);
+                    removed++;
+                }
+            } catch (IOException e) {
+                System.err.println("Error al borrar " + path + ": " + e.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Termina el grupo de hilos y espera a que terminen sus tareas, aunque se interrumpa el hilo que espera.
+     *
+     * @param cancel {@code true} para descartar las tareas pendientes, por ejemplo tras un error.
+     */
+    private static void awaitTermination(ThreadPoolExecutor executor, boolean cancel) {
+        if (cancel) {
+            executor.shutdownNow();
+        } else {
+            executor.shutdown();
+        }
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                executor.shutdownNow();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cifra un archivo del lote creando antes su carpeta de salida.
+     *
+     * @return {@code true} si el archivo se cifro.
+     */
+    private boolean encryptFile(Path input, Path output, int shift) {
+        try {
+            Files.createDirectories(output.getParent());
+        } catch (IOException e) {
+            System.err.println("Error al crear la carpeta de salida: " + e.getMessage());
+            return false;
+        }
+        OperationMetrics metrics = OperationMetrics.start("lote", input.toString(), cipher.getAlphabet());
+        boolean ok = fileHandler.transformFile(input.toString(), output.toString(),
+                buffer -> cipher.encrypt(buffer, shift), metrics);
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+
+    /**
+     * Cifra un archivo del lote solo si su contenido no se cifro ya con el mismo cifrado, y registra la salida en la
+     * cache.
+     *
+     * @return El resultado del archivo.
+     */
+    private Result encryptIncrementally(Path input, Path output, int shift, String cipherKey) {
+        String hash;
+        try {
+            hash = cache.hash(input);
+        } catch (IOException e) {
+            System.err.println("Error al leer el archivo " + input + ": " + e.getMessage());
+            return Result.FAILED;
+        }
+        if (cache.isCurrent(output, hash, cipherKey)) {
+            return Result.UNCHANGED;
+        }
+        Result result;
+        Path cached = cache.find(hash, cipherKey);
+        try {
+            if (cached != null) {
+                Files.createDirectories(output.getParent());
+                Path temporary = MyFileHandler.temporaryPath(output);
+                try {
+                    Files.copy(cached, temporary);
+                    MyFileHandler.moveIntoPlace(temporary, output);
+                } finally {
+                    MyFileHandler.deleteQuietly(temporary);     // Ya no existe si se movio
+                }
+                result = Result.COPIED;
+            } else if (encryptFile(input, output, shift)) {
+                result = Result.ENCRYPTED;
+            } else {
+                return Result.FAILED;
+            }
+            cache.put(hash, cipherKey, output);
+        } catch (IOException e) {
+            System.err.println("Error al guardar el archivo cifrado " + output + ": " + e.getMessage());
+            return Result.FAILED;
+        }
+        return result;
+    }
+
+    /**
+     * Escribe en el manifiesto la linea de un archivo cifrado. Las escrituras se sincronizan sobre el manifiesto
+     * porque se llaman desde varios hilos.
+     *
+     * @return {@code true} si se escribio la linea.
+     */
+    private static boolean writeManifestLine(BufferedWriter manifest, Path input, Path output, int shift) {
+        synchronized (manifest) {
+            try {
+                manifest.write(input + "\t" + output + "\t" + shift + "\n");
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error al escribir el manifiesto: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Lo que se hizo con un archivo del lote.
+     */
+    private enum Result {
+        ENCRYPTED, UNCHANGED, COPIED, FAILED
+    }
+}
@@ -0,0 +1,402 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * La clase {@code Benchmark} mide el rendimiento de {@link Alphabet}, {@link Cifrar} (con los motores Cesar,
+ * {@link VigenereEngine} y {@link AffineEngine}), {@link Descifrar},
+ * {@link MyFileHandler} y {@link MappedFileCipher} para detectar regresiones entre versiones.
+ *
+ * <p>Cada caso se mide con varios tamanos de texto y con varias mezclas de caracteres:</p>
+ * <ul>
+ *     <li>{@code ascii}: letras, numeros, espacios y signos ASCII.</li>
+ *     <li>{@code acentos}: texto con muchas ñ, vocales acentuadas y comillas «».</li>
+ *     <li>{@code fuera}: en su mayoria caracteres que no estan en el alfabeto y se copian sin cambios.</li>
+ *     <li>{@code docprueba}: los documentos de {@code DocPrueba} repetidos.</li>
+ * </ul>
+ *
+ * <p>Cada medicion calienta primero el JIT y despues repite la operacion durante al menos {@code MEDICION_MS}
+ * milisegundos, de modo que los textos pequenos tambien se miden con precision. Los resultados se muestran y se
+ * pueden guardar en CSV ({@code benchmark,mezcla,tamano,mb_s}); si se indica un CSV de referencia, cada resultado
+ * se compara con el suyo y el programa termina con codigo 1 si alguno empeora mas que la tolerancia. Se ejecuta
+ * con:</p>
+ * <pre>java Benchmark [--sizes 1K,1M,16M] [--output resultados.csv] [--baseline referencia.csv] [--tolerance 10]</pre>
+ * <p>o con {@code mvn -Pbenchmark verify}. Los tamanos admiten los sufijos K, M y G (1G necesita un heap grande).</p>
+ *
+ * <p>Antes de medir se comprueba con {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()} que
+ * la API sin asignaciones de {@link Cifrar} y {@link Descifrar} (de un texto a un {@code char[]} o
+ * {@link CharBuffer} del llamador) no crea objetos por llamada una vez calentado el JIT; si alguna llamada asigna
+ * memoria el programa tambien termina con codigo 1.</p>
+ */
+public class Benchmark {
+    private static final int DESPLAZAMIENTO = 3;
+    private static final long CALENTAMIENTO_MS = 300;
+    private static final long MEDICION_MS = 1000;
+    private static final String[] MEZCLAS = {"ascii", "acentos", "fuera", "docprueba"};
+
+    private static volatile long sink;      // Evita que el JIT elimine operaciones cuyo resultado no se usa
+
+    private final List<String[]> resultados = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        String sizes = "1K,1M,16M";
+        String output = null;
+        String baseline = null;
+        double tolerance = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes": sizes = args[++i]; break;
+                case "--output": output = args[++i]; break;
+                case "--baseline": baseline = args[++i]; break;
+                case "--tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                default: throw new IllegalArgumentException("Opcion desconocida: " + args[i]);
+            }
+        }
+
+        boolean sinAsignaciones = comprobarAsignaciones();
+        Benchmark benchmark = new Benchmark();
+        for (String size : sizes.split(",")) {
+            for (String mezcla : MEZCLAS) {
+                benchmark.benchmarkTexto(mezcla, size.trim(), buildText(mezcla, parseSize(size.trim())));
+            }
+        }
+        if (output != null) {
+            benchmark.guardar(Paths.get(output));
+        }
+        boolean regresiones = baseline != null && benchmark.comparar(Paths.get(baseline), tolerance) > 0;
+        if (regresiones || !sinAsignaciones) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Mide todas las operaciones sobre un texto, primero en memoria y despues sobre archivos.
+     *
+     * @param mezcla El nombre de la mezcla de caracteres.
+     * @param size El tamano con el que se muestra el resultado (ej. "1M").
+     * @param text El texto de prueba.
+     * @throws IOException Si no se pueden crear los archivos de prueba.
+     */
+    private void benchmarkTexto(String mezcla, String size, String text) throws IOException {
+        Alphabet alphabet = new Alphabet();
+        Cifrar cifrar = new Cifrar();
+        Descifrar descifrar = new Descifrar();
+        String cifrado = cifrar.encrypt(text, DESPLAZAMIENTO);
+        CipherEngine vigenere = new VigenereEngine(alphabet, "ClaveSecreta");
+        CipherEngine afin = new AffineEngine(alphabet, 5, 8);
+        int length = alphabet.size();
+        long chars = text.length();
+
+        medir("alphabet.getIndex", mezcla, size, chars, () -> {
+            long suma = 0;
+            for (int i = 0; i < text.length(); i++) {
+                suma += alphabet.getIndex(text.charAt(i));
+            }
+            return suma;
+        });
+        medir("alphabet.getCharacter", mezcla, size, chars, () -> {
+            long suma = 0;
+            for (int i = 0; i < text.length(); i++) {
+                suma += alphabet.getCharacter(i % length, (i & 1) == 0);
+            }
+            return suma;
+        });
+        medir("hashmap.shiftText", mezcla, size, chars,
+                () -> legacyShiftText(alphabet, text, DESPLAZAMIENTO).length());
+        medir("cifrar.encrypt", mezcla, size, chars, () -> cifrar.encrypt(text, DESPLAZAMIENTO).length());
+        medir("cifrar.vigenere", mezcla, size, chars, () -> cifrar.encrypt(text, vigenere).length());
+        medir("cifrar.afin", mezcla, size, chars, () -> cifrar.encrypt(text, afin).length());
+        medir("descifrar.decrypt", mezcla, size, chars, () -> descifrar.decrypt(cifrado, DESPLAZAMIENTO).length());
+
+        Path input = Files.createTempFile("benchmark", ".txt");
+        Path output = Files.createTempFile("benchmark", ".eC.txt");
+        Path roundTrip = Files.createTempFile("benchmark", ".dC.txt");
+        try {
+            Files.writeString(input, text);
+            long bytes = Files.size(input);
+            MyFileHandler fileHandler = new MyFileHandler();
+            MappedFileCipher mappedCipher = new MappedFileCipher();
+
+            medir("archivo.copia", mezcla, size, bytes, () -> {
+                Files.copy(input, output, StandardCopyOption.REPLACE_EXISTING);
+                return 1;
+            });
+            medir("archivo.readWrite", mezcla, size, bytes, () -> {
+                String contenido = fileHandler.readFromFile(input.toString());
+                fileHandler.writeToFile(output.toString(), cifrar.encrypt(contenido, DESPLAZAMIENTO));
+                return contenido.length();
+            });
+            medir("archivo.transformFile", mezcla, size, bytes, () -> {         // Ida y vuelta
+                fileHandler.transformFile(input.toString(), output.toString(),
+                        buffer -> cifrar.encrypt(buffer, DESPLAZAMIENTO));
+                return fileHandler.transformFile(output.toString(), roundTrip.toString(),
+                        buffer -> descifrar.decrypt(buffer, DESPLAZAMIENTO)) ? 1 : 0;
+            });
+            medir("archivo.mapeado", mezcla, size, bytes,
+                    () -> mappedCipher.encrypt(input.toString(), output.toString(), DESPLAZAMIENTO) ? 1 : 0);
+
+            int processors = Runtime.getRuntime().availableProcessors();    // Escalado con 2, 4... N hilos
+            for (int threads = 2; threads < processors * 2; threads *= 2) {
+                int hilos = Math.min(threads, processors);
+                try (MappedFileCipher parallelCipher = new MappedFileCipher(hilos)) {
+                    medir("archivo.mapeado.x" + hilos, mezcla, size, bytes,
+                            () -> parallelCipher.encrypt(input.toString(), output.toString(), DESPLAZAMIENTO) ? 1 : 0);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(roundTrip);
+        }
+    }
+
+    /**
+     * Mide los bytes asignados por llamada de la API sin asignaciones con mensajes cortos, como los de un servicio,
+     * comparandolos con {@link Cifrar#encrypt(String, int)}, que crea el {@code char[]} y el {@link String} del
+     * resultado.
+     *
+     * @return {@code true} si ninguna llamada de la API sin asignaciones asigno memoria.
+     * @throws IOException No se produce; lo exige {@link Operacion}.
+     */
+    private static boolean comprobarAsignaciones() throws IOException {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Esta JVM no mide las asignaciones por hilo; se omite la comprobacion.");
+            return true;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Cifrar cifrar = new Cifrar();
+        Descifrar descifrar = new Descifrar();
+        CipherEngine vigenere = new VigenereEngine(new Alphabet(), "Clave");
+        String mensaje = "Mensaje corto de prueba: ñandú, «hola» 123";
+        StringBuilder builder = new StringBuilder(mensaje);
+        char[] destino = new char[mensaje.length()];
+        CharBuffer heap = CharBuffer.allocate(mensaje.length());
+        CharBuffer directo = ByteBuffer.allocateDirect(mensaje.length() * 2).asCharBuffer();
+
+        String[] nombres = {"encrypt(String) [referencia]", "encrypt(String -> char[])", "encrypt(StringBuilder -> char[])",
+                "encrypt(char[] en el lugar)", "encrypt(String -> CharBuffer)", "encrypt(vigenere -> CharBuffer directo)",
+                "decrypt(String -> char[])", "decrypt(CharBuffer en el lugar)"};
+        Operacion[] operaciones = {
+                () -> cifrar.encrypt(mensaje, DESPLAZAMIENTO).length(),
+                () -> cifrar.encrypt(mensaje, 0, mensaje.length(), destino, 0, DESPLAZAMIENTO),
+                () -> cifrar.encrypt(builder, 0, builder.length(), destino, 0, DESPLAZAMIENTO),
+                () -> {
+                    cifrar.encrypt(destino, 0, destino.length, DESPLAZAMIENTO);
+                    return destino[0];
+                },
+                () -> {
+                    heap.clear();
+                    cifrar.encrypt(mensaje, heap, DESPLAZAMIENTO);
+                    return heap.position();
+                },
+                () -> {
+                    directo.clear();
+                    cifrar.encrypt(mensaje, directo, vigenere, 0);
+                    return directo.position();
+                },
+                () -> descifrar.decrypt(mensaje, 0, mensaje.length(), destino, 0, DESPLAZAMIENTO),
+                () -> {
+                    heap.clear();
+                    descifrar.decrypt(heap, DESPLAZAMIENTO);
+                    return heap.get(0);
+                }
+        };
+
+        final int llamadas = 1_000_000;
+        boolean sinAsignaciones = true;
+        for (int o = 0; o < operaciones.length; o++) {
+            for (int i = 0; i < llamadas; i++) {                    // Calentar el JIT
+                sink += operaciones[o].ejecutar();
+            }
+            long antes = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < llamadas; i++) {
+                sink += operaciones[o].ejecutar();
+            }
+            double bytesPorLlamada = (double) (threads.getCurrentThreadAllocatedBytes() - antes) / llamadas;
+            System.out.printf("asignacion %-40s %8.2f bytes/llamada%n", nombres[o], bytesPorLlamada);
+            if (o > 0 && bytesPorLlamada >= 1) {                    // La referencia si asigna memoria
+                System.out.println("La llamada " + nombres[o] + " asigna memoria.");
+                sinAsignaciones = false;
+            }
+        }
+        return sinAsignaciones;
+    }
+
+    /**
+     * Mide una operacion, muestra su rendimiento y lo agrega a los resultados.
+     *
+     * @param nombre El nombre del caso.
+     * @param mezcla La mezcla de caracteres.
+     * @param size El tamano del texto.
+     * @param unidades Los caracteres o bytes que procesa cada ejecucion de la operacion.
+     * @param operacion La operacion a medir.
+     * @throws IOException Si la operacion falla.
+     */
+    private void medir(String nombre, String mezcla, String size, long unidades, Operacion operacion)
+            throws IOException {
+        ejecutarDurante(operacion, CALENTAMIENTO_MS);                       // Calentar el JIT
+        long inicio = System.nanoTime();
+        long ejecuciones = ejecutarDurante(operacion, MEDICION_MS);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        double mbPorSegundo = (double) unidades * ejecuciones / (1024 * 1024) / segundos;
+        System.out.printf("%-24s %-10s %5s %10.1f MB/s%n", nombre, mezcla, size, mbPorSegundo);
+        resultados.add(new String[]{nombre, mezcla, size, String.format(Locale.ROOT, "%.1f", mbPorSegundo)});
+    }
+
+    /**
+     * Repite una operacion hasta que pasen al menos {@code milisegundos}.
+     *
+     * @return El numero de veces que se ejecuto la operacion.
+     */
+    private static long ejecutarDurante(Operacion operacion, long milisegundos) throws IOException {
+        long fin = System.nanoTime() + milisegundos * 1_000_000;
+        long ejecuciones = 0;
+        do {
+            sink += operacion.ejecutar();
+            ejecuciones++;
+        } while (System.nanoTime() < fin);
+        return ejecuciones;
+    }
+
+    /**
+     * Guarda los resultados en un archivo CSV.
+     *
+     * @param path La ruta del archivo CSV.
+     * @throws IOException Si no se puede escribir el archivo.
+     */
+    private void guardar(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("benchmark,mezcla,tamano,mb_s\n");
+            for (String[] resultado : resultados) {
+                writer.write(String.join(",", resultado) + "\n");
+            }
+        }
+        System.out.println("Resultados guardados en: " + path);
+    }
+
+    /**
+     * Compara los resultados con un CSV de referencia y muestra los casos que empeoraron.
+     *
+     * @param baseline La ruta del CSV de referencia.
+     * @param tolerance El porcentaje que un caso puede empeorar antes de considerarse una regresion.
+     * @return El numero de regresiones.
+     * @throws IOException Si no se puede leer el archivo de referencia.
+     */
+    private int comparar(Path baseline, double tolerance) throws IOException {
+        Map<String, Double> referencia = new HashMap<>();
+        for (String linea : Files.readAllLines(baseline)) {
+            String[] campos = linea.split(",");
+            if (campos.length == 4 && !campos[0].equals("benchmark")) {
+                referencia.put(campos[0] + "," + campos[1] + "," + campos[2], Double.parseDouble(campos[3]));
+            }
+        }
+        int regresiones = 0;
+        for (String[] resultado : resultados) {
+            Double anterior = referencia.get(resultado[0] + "," + resultado[1] + "," + resultado[2]);
+            double actual = Double.parseDouble(resultado[3]);
+            if (anterior != null && actual < anterior * (1 - tolerance / 100)) {
+                System.out.printf("Regresion en %s %s %s: %.1f -> %.1f MB/s%n",
+                        resultado[0], resultado[1], resultado[2], anterior, actual);
+                regresiones++;
+            }
+        }
+        System.out.println("Regresiones: " + regresiones);
+        return regresiones;
+    }
+
+    /**
+     * Construye un texto del tamano indicado con la mezcla de caracteres pedida.
+     *
+     * @param mezcla La mezcla de caracteres (ver la documentacion de la clase).
+     * @param size El numero de caracteres deseado.
+     * @return El texto de prueba.
+     * @throws IOException Si no se pueden leer los documentos de prueba.
+     */
+    private static String buildText(String mezcla, int size) throws IOException {
+        StringBuilder muestra = new StringBuilder();
+        switch (mezcla) {
+            case "ascii":
+                muestra.append(aleatorio("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789     .,;\n"));
+                break;
+            case "acentos":
+                muestra.append(aleatorio("ñÑàâäçéèêëîïôùûü«»¿aeiou "));
+                break;
+            case "fuera":
+                muestra.append(aleatorio("áíóúÁÉÍÓÚ日本語\t_`~€ab "));
+                break;
+            default:
+                try (var files = Files.list(Paths.get("DocPrueba"))) {
+                    for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+                        muestra.append(Files.readString(file)).append(System.lineSeparator());
+                    }
+                }
+        }
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append(muestra, 0, Math.min(muestra.length(), size - text.length()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Genera 4096 caracteres tomados al azar (con semilla fija) de {@code caracteres}.
+     */
+    private static String aleatorio(String caracteres) {
+        Random random = new Random(42);
+        StringBuilder muestra = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            muestra.append(caracteres.charAt(random.nextInt(caracteres.length())));
+        }
+        return muestra.toString();
+    }
+
+    /**
+     * Convierte un tamano como "1K", "16M" o "1G" en un numero de caracteres.
+     */
+    private static int parseSize(String size) {
+        char unidad = Character.toUpperCase(size.charAt(size.length() - 1));
+        long multiplicador = unidad == 'K' ? 1024 : unidad == 'M' ? 1024 * 1024 : unidad == 'G' ? 1024 * 1024 * 1024 : 1;
+        String numero = multiplicador == 1 ? size : size.substring(0, size.length() - 1);
+        return (int) Math.min(Long.parseLong(numero) * multiplicador, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Reproduce el recorrido original de {@code Cifrar.shiftText}, que busca el indice de cada caracter en
+     * {@link Alphabet}, para poder compararlo con la version basada en tablas.
+     */
+    private static String legacyShiftText(Alphabet alphabet, String text, int desplazamiento) {
+        StringBuilder result = new StringBuilder();
+        for (char character : text.toCharArray()) {
+            int index = alphabet.getIndex(character);
+            if (index == -1) {
+                result.append(character);
+                continue;
+            }
+            int newIndex = (index + desplazamiento + alphabet.getAlphabetString().length()) % alphabet.getAlphabetString().length();
+            result.append(alphabet.getCharacter(newIndex, Character.isLowerCase(character)));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Operacion a medir; devuelve un valor que se acumula en {@code sink}.
+     */
+    private interface Operacion {
+        long ejecutar() throws IOException;
+    }
+}
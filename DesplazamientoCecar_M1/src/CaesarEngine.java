@@ -0,0 +1,54 @@
+/**
+ * La clase {@code CaesarEngine} es el cifrado Cesar original del programa: desplaza cada caracter un numero fijo de
+ * posiciones en el {@link Alphabet}.
+ *
+ * <p>Usa las tablas de {@link Alphabet#getShiftTable(int)}, que conservan la regla de minusculas de
+ * {@link Alphabet#getCharacter(int, boolean)}, de modo que los archivos cifrados con versiones anteriores se
+ * descifran igual. Si {@link Cifrar#VECTOR_API} esta activo el rango se procesa con {@link VectorShiftKernel}; en
+ * los alfabetos de caracteres suplementarios se usan las tablas de {@link Alphabet#getSupplementaryShiftTable(int)}.</p>
+ */
+public class CaesarEngine extends TableCipherEngine {
+    private final int desplazamiento;
+    private final VectorShiftKernel vectorKernel;
+
+    /**
+     * Constructor de la clase {@code CaesarEngine}.
+     *
+     * @param alphabet El alfabeto sobre el que se desplazan los caracteres.
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres al cifrar.
+     */
+    public CaesarEngine(Alphabet alphabet, int desplazamiento) {
+        super(alphabet.isSupplementary() ? null : new char[][]{alphabet.getShiftTable(desplazamiento)},
+                alphabet.isSupplementary() ? null : new char[][]{alphabet.getShiftTable(-desplazamiento)},
+                alphabet.isSupplementary() ? new int[][][]{alphabet.getSupplementaryShiftTable(desplazamiento)} : null,
+                alphabet.isSupplementary() ? new int[][][]{alphabet.getSupplementaryShiftTable(-desplazamiento)} : null);
+        this.desplazamiento = desplazamiento;
+        this.vectorKernel = Cifrar.VECTOR_API && !alphabet.isSupplementary()   // Solo si el modulo existe
+                ? new VectorShiftKernel(alphabet) : null;
+    }
+
+    @Override
+    public void encrypt(char[] chars, int from, int to, long position) {
+        if (vectorKernel != null) {
+            vectorKernel.shift(chars, from, to, getEncryptTable(), desplazamiento);
+            return;
+        }
+        super.encrypt(chars, from, to, position);
+    }
+
+    @Override
+    public void decrypt(char[] chars, int from, int to, long position) {
+        if (vectorKernel != null) {
+            vectorKernel.shift(chars, from, to, getDecryptTable(), -desplazamiento);
+            return;
+        }
+        super.decrypt(chars, from, to, position);
+    }
+
+    /**
+     * @return El desplazamiento de este cifrado.
+     */
+    public int getDesplazamiento() {
+        return desplazamiento;
+    }
+}
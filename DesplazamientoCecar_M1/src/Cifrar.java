@@ -1,3 +1,7 @@
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
 /**
  * La clase proporciona metodos para cifrar texto utilizando un desplazamiento en el alfabeto.
  *
@@ -7,14 +11,38 @@
  * realiza la logica de cifrado.</p>
  */
 public class Cifrar {
+    /**
+     * Indica si se usa {@link VectorShiftKernel}. Requiere activarlo con {@code -Dcifrar.vector=true} y que el
+     * modulo {@code jdk.incubator.vector} este disponible ({@code --add-modules jdk.incubator.vector}); en otro caso
+     * se usa la tabla escalar.
+     */
+    static final boolean VECTOR_API = Boolean.getBoolean("cifrar.vector")
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** Caracteres que se procesan de una vez cuando el buffer no tiene un arreglo accesible. */
+    private static final int SCRATCH_SIZE = 8 * 1024;
+    /** Arreglo auxiliar por hilo, reutilizado para no crear objetos en cada llamada. */
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[SCRATCH_SIZE]);
+
     private final Alphabet alphabet;
+    private final CipherEngine[] caesarEngines;     // Un motor por desplazamiento normalizado, creado bajo demanda
 
     /**
-     * Constructor de la clase Cifrar. Inicializa una nueva instancia de la clase {@link Alphabet} que se utilizara
+     * Constructor de la clase Cifrar con el alfabeto predeterminado ({@link Alphabet#getDefault()}), que se utilizara
      * para el cifrado de texto.</p>
      */
     public Cifrar() {
-        this.alphabet = new Alphabet();
+        this(Alphabet.getDefault());
+    }
+
+    /**
+     * Constructor de la clase Cifrar con otro alfabeto, por ejemplo uno cargado con {@link Alphabet#load}.
+     *
+     * @param alphabet El alfabeto que se utilizara para el cifrado de texto.
+     */
+    public Cifrar(Alphabet alphabet) {
+        this.alphabet = alphabet;
+        this.caesarEngines = new CipherEngine[alphabet.size()];
     }
 
     /**
@@ -27,15 +55,200 @@ public class Cifrar {
      */
     public String encrypt(String text, int desplazamiento) {    return shiftText(text, desplazamiento);}
 
+    /**
+     * Cifra un texto con cualquier motor de cifrado (Cesar, Vigenere, afin...).
+     *
+     * @param text El texto que se desea cifrar.
+     * @param engine El motor de cifrado.
+     * @return El texto cifrado.
+     */
+    public String encrypt(String text, CipherEngine engine) {
+        char[] result = text.toCharArray();
+        engine.encrypt(result, 0, result.length, 0);
+        return new String(result);
+    }
+
+    /**
+     * Cifra en el mismo lugar los caracteres restantes de un {@link CharBuffer}.
+     *
+     * <p>Se cifran los caracteres entre {@code position} y {@code limit} sin crear copias, por lo que este metodo
+     * permite cifrar un archivo por bloques reutilizando siempre el mismo buffer. La posicion y el limite del
+     * buffer no se modifican.</p>
+     *
+     * @param buffer El buffer cuyos caracteres restantes se cifraran.
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
+     */
+    public void encrypt(CharBuffer buffer, int desplazamiento) {
+        encrypt(buffer, caesar(desplazamiento), 0);
+    }
+
+    /**
+     * Cifra en el mismo lugar los caracteres restantes de un {@link CharBuffer} con un motor de cifrado.
+     *
+     * @param buffer El buffer cuyos caracteres restantes se cifraran.
+     * @param engine El motor de cifrado.
+     * @param position La posicion en el texto completo del primer caracter restante del buffer.
+     */
+    public void encrypt(CharBuffer buffer, CipherEngine engine, long position) {
+        if (buffer.hasArray()) {                                    // Acceso directo al arreglo del buffer
+            int offset = buffer.arrayOffset();
+            engine.encrypt(buffer.array(), offset + buffer.position(), offset + buffer.limit(), position);
+            return;
+        }
+        char[] scratch = scratch();                             // Buffer directo: por tramos en el arreglo auxiliar
+        int base = buffer.position();
+        int remaining = buffer.remaining();
+        for (int i = 0, length; i < remaining; i += length) {
+            length = chunkLength(buffer, i, remaining);
+            buffer.get(base + i, scratch, 0, length);
+            engine.encrypt(scratch, 0, length, position + i);
+            buffer.put(base + i, scratch, 0, length);
+        }
+    }
+
+    /**
+     * Cifra en el mismo lugar un rango de un arreglo de caracteres, sin crear ningun objeto.
+     *
+     * @param chars El arreglo de caracteres.
+     * @param from La posicion inicial (incluida).
+     * @param to La posicion final (excluida).
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
+     */
+    public void encrypt(char[] chars, int from, int to, int desplazamiento) {
+        caesar(desplazamiento).encrypt(chars, from, to, 0);
+    }
+
+    /**
+     * Cifra un rango de un texto y escribe el resultado en un arreglo del llamador, sin crear ningun objeto. El
+     * origen puede ser un {@link String}, un {@link StringBuilder}, un {@link CharBuffer} o cualquier
+     * {@link CharSequence}; si el destino es el mismo arreglo que respalda al origen, el cifrado se hace en el mismo
+     * lugar.
+     *
+     * @param source El texto de origen.
+     * @param start La posicion inicial en el origen (incluida).
+     * @param end La posicion final en el origen (excluida).
+     * @param target El arreglo de destino.
+     * @param offset La posicion del destino donde se escribe el primer caracter.
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
+     * @return La posicion del destino siguiente al ultimo caracter escrito.
+     * @throws IndexOutOfBoundsException Si el rango no es valido o el destino no tiene espacio suficiente.
+     */
+    public int encrypt(CharSequence source, int start, int end, char[] target, int offset, int desplazamiento) {
+        return encrypt(source, start, end, target, offset, caesar(desplazamiento), 0);
+    }
+
+    /**
+     * Cifra un rango de un texto con un motor de cifrado y escribe el resultado en un arreglo del llamador.
+     *
+     * @param source El texto de origen.
+     * @param start La posicion inicial en el origen (incluida).
+     * @param end La posicion final en el origen (excluida).
+     * @param target El arreglo de destino.
+     * @param offset La posicion del destino donde se escribe el primer caracter.
+     * @param engine El motor de cifrado.
+     * @param position La posicion de {@code source.charAt(start)} en el texto completo.
+     * @return La posicion del destino siguiente al ultimo caracter escrito.
+     * @throws IndexOutOfBoundsException Si el rango no es valido o el destino no tiene espacio suficiente.
+     */
+    public int encrypt(CharSequence source, int start, int end, char[] target, int offset, CipherEngine engine,
+                       long position) {
+        copyChars(source, start, end, target, offset);
+        engine.encrypt(target, offset, offset + (end - start), position);
+        return offset + (end - start);
+    }
+
+    /**
+     * Cifra un texto y lo escribe en un {@link CharBuffer} del llamador a partir de su posicion, que avanza como
+     * con {@link CharBuffer#put(String)}. No crea ningun objeto.
+     *
+     * @param source El texto de origen.
+     * @param target El buffer de destino.
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
+     * @throws BufferOverflowException Si el buffer no tiene espacio para todo el texto.
+     */
+    public void encrypt(CharSequence source, CharBuffer target, int desplazamiento) {
+        encrypt(source, target, caesar(desplazamiento), 0);
+    }
+
+    /**
+     * Cifra un texto con un motor de cifrado y lo escribe en un {@link CharBuffer} del llamador a partir de su
+     * posicion, que avanza como con {@link CharBuffer#put(String)}.
+     *
+     * @param source El texto de origen.
+     * @param target El buffer de destino.
+     * @param engine El motor de cifrado.
+     * @param position La posicion de {@code source.charAt(0)} en el texto completo.
+     * @throws BufferOverflowException Si el buffer no tiene espacio para todo el texto.
+     */
+    public void encrypt(CharSequence source, CharBuffer target, CipherEngine engine, long position) {
+        int length = source.length();
+        if (target.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int start = target.position();
+        if (target.hasArray()) {
+            encrypt(source, 0, length, target.array(), target.arrayOffset() + start, engine, position);
+        } else {
+            char[] scratch = scratch();
+            for (int i = 0, chunk; i < length; i += chunk) {
+                chunk = chunkLength(source, i, length);
+                encrypt(source, i, i + chunk, scratch, 0, engine, position + i);
+                target.put(start + i, scratch, 0, chunk);
+            }
+        }
+        target.position(start + length);
+    }
+
+    /**
+     * Crea una funcion que cifra los bloques sucesivos de un texto, por ejemplo para
+     * {@link MyFileHandler#transformFile(String, String, Consumer)}. La funcion recuerda cuantos caracteres ha
+     * cifrado, de modo que los cifrados de varias tablas continuan la clave entre bloques; por eso se debe crear una
+     * por archivo.
+     *
+     * @param engine El motor de cifrado.
+     * @return La funcion que cifra cada bloque en el mismo lugar.
+     */
+    public Consumer<CharBuffer> encryptor(CipherEngine engine) {
+        long[] position = {0};
+        return buffer -> {
+            encrypt(buffer, engine, position[0]);
+            position[0] += buffer.remaining();
+        };
+    }
+
+    /**
+     * @return El alfabeto con el que cifra esta clase.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Crea el motor del cifrado Cesar con el alfabeto de esta clase.
+     *
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
+     * @return El motor de cifrado.
+     */
+    public CipherEngine caesar(int desplazamiento) {
+        int normalizado = Math.floorMod(desplazamiento, caesarEngines.length);
+        CipherEngine engine = caesarEngines[normalizado];
+        if (engine == null) {                                   // Los motores son inmutables: compartirlos es seguro
+            engine = new CaesarEngine(alphabet, normalizado);
+            caesarEngines[normalizado] = engine;
+        }
+        return engine;
+    }
+
     /**
      * Desplaza los caracteres del texto segun el desplazamiento especificado.
      *
-     * <p>Este metodo itera sobre cada caracter del texto, obtiene su indice en el alfabeto y calcula un nuevo indice
-     * basado en el desplazamiento. Si el caracter no esta en el alfabeto, se agrega tal cual al resultado. El nuevo
-     * caracter se obtiene utilizando el nuevo indice calculado.</p>
+     * <p>Este metodo usa un {@link CaesarEngine}, que obtiene de {@link Alphabet#getShiftTable(int)} la tabla de
+     * traduccion del desplazamiento y sustituye cada caracter por su entrada en la tabla. Los caracteres que no
+     * estan en el alfabeto tienen como entrada a si mismos, por lo que se copian tal cual.</p>
      *
      * <p>Ejemplo: Si el indice es 0 (para 'a') y el desplazamiento es 3, el nuevo indice se calcula como:
-     * {@code newIndex} = (0 + 3 + 26) % 26 = 3, que corresponde a 'd'.</p>
+     * {@code newIndex} = (0 + 3 + 26) % 26 = 3, que corresponde a 'd'. La tabla guarda ese resultado en
+     * {@code table['a']}.</p>
      *
      * @param text El texto que se desea cifrar (ej. "abc").
      * @param desplazamiento El numero de posiciones que se desplazaran los caracteres (ej. un desplazamiento de 3
@@ -43,20 +256,49 @@ public class Cifrar {
      * @return El texto cifrado resultante (ej. "def" si el texto original era "abc" y el desplazamiento era 3).
      */
     private String shiftText(String text, int desplazamiento) {
-        StringBuilder result = new StringBuilder();
-        for (char character : text.toCharArray()) {
-            int index = alphabet.getIndex(character);   // Obtener el índice del carácter en el alfabeto
+        return encrypt(text, caesar(desplazamiento));
+    }
 
-            if (index == -1) {             // Si el carácter no está en el alfabeto, se agrega tal cual
-                result.append(character);
-                continue;
+    /**
+     * Copia un rango de un {@link CharSequence} a un arreglo usando la copia en bloque del tipo concreto cuando
+     * existe, sin crear objetos.
+     */
+    static void copyChars(CharSequence source, int start, int end, char[] target, int offset) {
+        if (source instanceof String) {
+            ((String) source).getChars(start, end, target, offset);
+        } else if (source instanceof StringBuilder) {
+            ((StringBuilder) source).getChars(start, end, target, offset);
+        } else if (source instanceof CharBuffer) {
+            CharBuffer buffer = (CharBuffer) source;        // Los indices de CharSequence son relativos a position
+            buffer.get(buffer.position() + start, target, offset, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                target[offset++] = source.charAt(i);
             }
+        }
+    }
 
-            int newIndex = (index + desplazamiento + alphabet.getAlphabetString().length()) % alphabet.getAlphabetString().length();    // Calcular el nuevo índice con el desplazamiento
-            char newChar = alphabet.getCharacter(newIndex, Character.isLowerCase(character));
-            result.append(newChar);     // Agregar el nuevo carácter al resultado
+    /**
+     * Calcula el tamano del siguiente tramo de un texto que se procesa en el arreglo auxiliar: hasta
+     * {@code SCRATCH_SIZE} caracteres, sin terminar entre los dos {@code char} de un caracter suplementario.
+     *
+     * @param text El texto, con indices relativos como en {@link CharSequence#charAt(int)}.
+     * @param start La posicion inicial del tramo.
+     * @param end La posicion final del texto (excluida).
+     * @return El numero de caracteres del tramo.
+     */
+    static int chunkLength(CharSequence text, int start, int end) {
+        int length = Math.min(SCRATCH_SIZE, end - start);
+        if (start + length < end && length > 1 && Character.isHighSurrogate(text.charAt(start + length - 1))) {
+            length--;                                       // El par se procesa completo en el siguiente tramo
         }
-        return result.toString();
+        return length;
     }
-}
 
+    /**
+     * @return El arreglo auxiliar del hilo actual, de {@code SCRATCH_SIZE} caracteres.
+     */
+    static char[] scratch() {
+        return SCRATCH.get();
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * La interfaz {@code CipherEngine} representa un cifrado clasico por sustitucion que {@link Cifrar} y
+ * {@link Descifrar} aplican sobre rangos de caracteres.
+ *
+ * <p>Cada motor precalcula sus tablas de traduccion al crearse, de modo que cifrar un caracter es siempre
+ * {@code tabla[caracter]}, sin buscar en mapas ni calcular modulos, aunque el cifrado use varias claves. Los cifrados
+ * con varias tablas (como {@link VigenereEngine}) eligen la tabla segun la posicion del caracter en el texto
+ * completo; por eso los metodos reciben la posicion del primer caracter del rango, para que un archivo procesado por
+ * bloques produzca el mismo resultado que el texto completo.</p>
+ *
+ * <p>Implementaciones: {@link CaesarEngine}, {@link VigenereEngine}, {@link AffineEngine} y
+ * {@link KeyedAlphabetEngine}.</p>
+ */
+public interface CipherEngine {
+
+    /**
+     * Cifra en el mismo lugar un rango de caracteres.
+     *
+     * @param chars El arreglo de caracteres.
+     * @param from La posicion inicial en el arreglo (incluida).
+     * @param to La posicion final en el arreglo (excluida).
+     * @param position La posicion de {@code chars[from]} en el texto completo.
+     */
+    void encrypt(char[] chars, int from, int to, long position);
+
+    /**
+     * Descifra en el mismo lugar un rango de caracteres.
+     *
+     * @param chars El arreglo de caracteres.
+     * @param from La posicion inicial en el arreglo (incluida).
+     * @param to La posicion final en el arreglo (excluida).
+     * @param position La posicion de {@code chars[from]} en el texto completo.
+     */
+    void decrypt(char[] chars, int from, int to, long position);
+
+    /**
+     * Obtiene la tabla de cifrado si el cifrado usa una sola tabla, por ejemplo para {@link MappedFileCipher}.
+     *
+     * @return La tabla de 65536 entradas (compartida, no debe modificarse), o {@code null} si el cifrado usa varias.
+     */
+    char[] getEncryptTable();
+
+    /**
+     * Obtiene la tabla de descifrado si el cifrado usa una sola tabla.
+     *
+     * @return La tabla de 65536 entradas (compartida, no debe modificarse), o {@code null} si el cifrado usa varias.
+     */
+    char[] getDecryptTable();
+}
@@ -0,0 +1,60 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * El evento de JFR que se registra al terminar cada operacion medida con {@link OperationMetrics}.
+ *
+ * <p>Solo se crea cuando JFR esta grabando, por ejemplo con
+ * {@code java -XX:StartFlightRecording=filename=cifrado.jfr Main encrypt ...}; despues se consulta con
+ * {@code jfr print --events algoritmoapp.Operacion cifrado.jfr} o en JDK Mission Control.</p>
+ */
+@Name("algoritmoapp.Operacion")
+@Label("Operacion de cifrado")
+@Category("AlgoritmoApp")
+@Description("Tiempos y contadores de un cifrado o descifrado")
+@StackTrace(false)
+class CipherEvent extends Event {
+    @Label("Operacion")
+    String operation;
+
+    @Label("Entrada")
+    String path;
+
+    @Label("Exito")
+    boolean success;
+
+    @Label("Lectura")
+    @Timespan(Timespan.NANOSECONDS)
+    long readTime;
+
+    @Label("Desplazamiento")
+    @Timespan(Timespan.NANOSECONDS)
+    long shiftTime;
+
+    @Label("Escritura")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeTime;
+
+    @Label("Caracteres")
+    long characters;
+
+    @Label("Fuera del alfabeto")
+    @Description("Caracteres que no estan en el alfabeto y se copian sin cambios")
+    long passedThrough;
+
+    @Label("Bytes leidos")
+    @DataAmount
+    long bytes;
+
+    @Label("Velocidad")
+    @DataAmount
+    @Frequency
+    long bytesPerSecond;
+}
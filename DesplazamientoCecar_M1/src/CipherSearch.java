@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * La clase {@code CipherSearch} busca un texto dentro de archivos cifrados sin descifrarlos.
+ *
+ * <p>Un cifrado de una sola tabla ({@link CipherEngine#getEncryptTable()}: Cesar, afin o alfabeto permutado) cambia
+ * cada caracter siempre por el mismo, sin importar su posicion, asi que el texto buscado aparece cifrado exactamente
+ * donde el original lo contiene. Por eso basta con cifrar el patron una vez con el mismo motor y buscarlo en el
+ * texto cifrado. La busqueda se hace sobre los bytes UTF-8 del archivo mapeado en memoria con el algoritmo de
+ * Boyer-Moore-Horspool; como UTF-8 se autosincroniza, un patron valido solo coincide al inicio de un caracter. Los
+ * archivos se recorren en paralelo y el resultado se muestra en el orden de entrada, con la linea de cada
+ * coincidencia descifrada:</p>
+ * <pre>
+ * Files/eC_texto_...txt:12:3456: la linea donde aparece el texto buscado
+ * </pre>
+ * <p>donde 12 es el numero de linea y 3456 la posicion en bytes de la coincidencia. Con la regla de minusculas del
+ * alfabeto dos caracteres distintos pueden cifrarse igual, por lo que puede haber coincidencias de mas en el
+ * original, pero nunca de menos.</p>
+ */
+public class CipherSearch {
+    private static final long WINDOW = 1L << 28;            // Bytes mapeados a la vez
+    private static final int MAX_LINE = 200;                // Bytes de la linea que se muestran a cada lado
+
+    /**
+     * Un archivo cifrado en el que se busca, con el motor con el que se cifro.
+     */
+    public static final class Target {
+        private final String path;
+        private final CipherEngine engine;
+
+        /**
+         * @param path La ruta del archivo cifrado.
+         * @param engine El motor con el que se cifro, de una sola tabla.
+         */
+        public Target(String path, CipherEngine engine) {
+            this.path = path;
+            this.engine = engine;
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * Constructor de la clase {@code CipherSearch}.
+     *
+     * @param threads El numero de archivos en los que se busca a la vez.
+     */
+    public CipherSearch(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Busca un texto en los archivos cifrados y muestra una linea por coincidencia y un resumen.
+     *
+     * @param pattern El texto sin cifrar que se busca.
+     * @param targets Los archivos cifrados.
+     * @return El numero de coincidencias, o -1 si algun archivo no se pudo leer o su cifrado usa varias tablas.
+     */
+    public long search(String pattern, List<Target> targets) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<String>>> results = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            results.add(executor.submit(() -> search(pattern, target)));
+        }
+        // Las lineas en UTF-8, como el resto de las salidas, y no en la codificacion del sistema. Sin cerrarlo, que
+        // cerraria System.out
+        PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        long hits = 0;
+        int files = 0;
+        boolean failed = false;
+        try {
+            for (Future<List<String>> result : results) {
+                List<String> lines = result.get();
+                if (lines == null) {
+                    failed = true;
+                    continue;
+                }
+                lines.forEach(out::println);
+                out.flush();
+                hits += lines.size();
+                files += lines.isEmpty() ? 0 : 1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException e) {
+            System.err.println("Error al buscar: " + e.getCause());
+            return -1;
+        } finally {
+            executor.shutdownNow();
+        }
+        out.printf("Coincidencias: %d en %d de %d archivos%n", hits, files, targets.size());
+        out.flush();
+        return failed ? -1 : hits;
+    }
+
+    /**
+     * Busca el patron en un archivo.
+     *
+     * @return Las lineas del resultado, o {@code null} si ocurre un error.
+     */
+    private List<String> search(String pattern, Target target) {
+        char[] encryptTable = target.engine.getEncryptTable();
+        char[] decryptTable = target.engine.getDecryptTable();
+        if (encryptTable == null || decryptTable == null) {
+            System.err.println("Error: La busqueda solo admite cifrados de una tabla: " + target.path);
+            return null;
+        }
+        byte[] needle = translate(pattern, encryptTable).getBytes(StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+        if (needle.length == 0) {
+            return lines;
+        }
+        int[] skip = skipTable(needle);
+        try (FileChannel channel = FileChannel.open(Paths.get(target.path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long line = 1;
+            for (long base = 0; base < size; base += WINDOW) {
+                // Cada ventana se solapa con la siguiente lo necesario para no perder coincidencias entre ambas
+                int length = (int) Math.min(size - base, WINDOW + needle.length - 1);
+                int limit = (int) Math.min(length, WINDOW);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                int counted = 0;
+                for (int match = indexOf(window, length, needle, skip, 0); match >= 0 && match < limit;
+                     match = indexOf(window, length, needle, skip, match + 1)) {
+                    line += countNewlines(window, counted, match);
+                    counted = match;
+                    lines.add(target.path + ":" + line + ":" + (base + match) + ": "
+                            + lineAt(window, length, match, decryptTable));
+                }
+                line += countNewlines(window, counted, limit);
+            }
+        } catch (IOException e) {
+            System.err.println("Error al buscar en " + target.path + ": " + e.getMessage());
+            return null;
+        }
+        return lines;
+    }
+
+    /**
+     * Traduce un texto con una tabla de cifrado.
+     */
+    private static String translate(String text, char[] table) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = table[chars[i]];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Calcula cuanto puede avanzar la busqueda segun el ultimo byte de la ventana comparada.
+     */
+    private static int[] skipTable(byte[] needle) {
+        int[] skip = new int[256];
+        Arrays.fill(skip, needle.length);
+        for (int i = 0; i < needle.length - 1; i++) {
+            skip[needle[i] & 0xFF] = needle.length - 1 - i;
+        }
+        return skip;
+    }
+
+    /**
+     * Busca el patron con Boyer-Moore-Horspool a partir de una posicion.
+     *
+     * @return La posicion de la coincidencia, o -1 si no hay ninguna.
+     */
+    private static int indexOf(MappedByteBuffer haystack, int length, byte[] needle, int[] skip, int from) {
+        int last = needle.length - 1;
+        for (int i = from; i + last < length; i += skip[haystack.get(i + last) & 0xFF]) {
+            int j = last;
+            while (haystack.get(i + j) == needle[j]) {
+                if (j-- == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int countNewlines(MappedByteBuffer buffer, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Descifra la linea de una coincidencia, como mucho {@code MAX_LINE} bytes a cada lado.
+     */
+    private static String lineAt(MappedByteBuffer buffer, int length, int match, char[] decryptTable) {
+        int start = match;
+        while (start > 0 && match - start < MAX_LINE && buffer.get(start - 1) != '\n') {
+            start--;
+        }
+        int end = match;
+        while (end < length && end - match < MAX_LINE && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+            end++;
+        }
+        while (start < match && (buffer.get(start) & 0xC0) == 0x80) {
+            start++;                                        // No empezar a mitad de un caracter
+        }
+        while (end > match && end < length && (buffer.get(end) & 0xC0) == 0x80) {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return translate(new String(bytes, StandardCharsets.UTF_8), decryptTable);
+    }
+}
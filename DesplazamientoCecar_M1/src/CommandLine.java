@@ -0,0 +1,743 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * La clase {@code CommandLine} ejecuta el programa sin el menu interactivo, a partir de los argumentos de
+ * {@link Main}, para poder usarlo desde scripts y tuberias de comandos.
+ *
+ * <pre>
+ * encrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) [-o &lt;salida&gt;] [--mapped | --pipelined] [--threads &lt;n&gt;] [&lt;entrada&gt;...]
+ * decrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) [-o &lt;salida&gt;] [--mapped | --pipelined] [--threads &lt;n&gt;] [&lt;entrada&gt;...]
+ * encrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) --compress [-o &lt;salida&gt;] [&lt;entrada&gt;...]
+ * encrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) --archive [-o &lt;salida.zip&gt;] &lt;archivo.zip&gt;...
+ * decrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) --archive [-o &lt;salida.zip&gt;] &lt;archivo.zip&gt;...
+ * encrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) --index [--pipelined] [-o &lt;salida&gt;] &lt;entrada&gt;...
+ * decrypt (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) (--lines &lt;desde-hasta&gt; | --bytes &lt;desde-hasta&gt;) [-o &lt;salida&gt;] &lt;cifrado&gt;
+ * decrypt --compress [-o &lt;salida&gt;] [&lt;entrada&gt;...]
+ * decrypt --auto &lt;entrada&gt;...
+ * detect &lt;entrada&gt;...
+ * decrypt-properties &lt;cifrado|proper.txt|contenedor.ccz&gt;...
+ * follow (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) [--latency &lt;ms&gt;] [-o &lt;salida&gt;] &lt;entrada&gt;
+ * batch -s &lt;desplazamiento&gt; [--incremental] &lt;directorio&gt;
+ * verify (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt; | --compress) [--threads &lt;n&gt;] &lt;original&gt; &lt;cifrado&gt;...
+ * verify [--threads &lt;n&gt;] &lt;manifiesto|cifrado&gt;...
+ * search (-s &lt;desplazamiento&gt; | --cipher &lt;tipo:clave&gt;) [--threads &lt;n&gt;] &lt;patron&gt; &lt;archivo|directorio&gt;...
+ * search [--threads &lt;n&gt;] &lt;patron&gt; &lt;manifiesto|cifrado&gt;...
+ * serve [--port &lt;puerto&gt;] [--threads &lt;n&gt;]
+ * </pre>
+ * <p>Todos los comandos admiten {@code --alphabet <archivo>} para usar un alfabeto cargado con
+ * {@link Alphabet#load(java.nio.file.Path)} en lugar del predeterminado; para descifrar hay que indicar el mismo
+ * alfabeto que al cifrar. Con {@code --metrics} se muestran en la salida de error las mediciones de cada operacion
+ * ({@link OperationMetrics}); con JFR grabando tambien se registran como eventos {@link CipherEvent}.</p>
+ *
+ * <p>Sin entradas, o con la entrada {@code -}, se lee de la entrada estandar y el resultado se escribe en la
+ * salida estandar, o en el archivo de {@code -o}. Un archivo de entrada con {@code -o} se escribe en esa ruta
+ * ({@code -o -} para la salida estandar). Sin {@code -o}, cada archivo de entrada se guarda en {@code Files/} como
+ * desde el menu (y al cifrar se guardan sus propiedades), de modo que un lote completo se procesa en una sola
+ * ejecucion de la JVM. La opcion {@code --mapped} usa {@link MappedFileCipher} y solo se aplica de archivo a
+ * archivo; {@code --pipelined} usa {@link PipelinedFileCipher}, que solapa la lectura, el desplazamiento y la
+ * escritura de cada archivo.</p>
+ *
+ * <p>La opcion {@code --cipher} elige otro motor de cifrado en lugar del desplazamiento Cesar, con el formato de
+ * {@link ManagerEncryption#crearMotor(String)} (por ejemplo {@code vigenere:CLAVE} o {@code afin:5,8}). Solo los
+ * cifrados con {@code -s} se guardan en el almacen de propiedades, que registra un desplazamiento.</p>
+ *
+ * <p>Con {@code --compress}, {@code encrypt} escribe un {@link CompressedContainer} (en {@code Files/} con la
+ * extension {@code .ccz} si no se indica {@code -o}), que guarda el cifrado en su cabecera, y {@code decrypt} lee
+ * contenedores sin necesidad de {@code -s} ni {@code --cipher}. Los contenedores tambien se pueden descifrar con
+ * {@code decrypt-properties}.</p>
+ *
+ * <p>Con {@code --archive}, cada entrada es un ZIP (o un JAR) cuyos archivos se cifran o descifran uno a uno con
+ * {@link ZipArchiveCipher}, sin extraerlos, en otro ZIP ({@code Files/eA_<nombre>.zip} o {@code Files/dA_<nombre>.zip}
+ * si no se indica {@code -o}); los archivos que no son texto UTF-8, como las clases de un JAR, se copian sin cambios.
+ * Al cifrar con {@code -s} se guarda un unico manifiesto en {@code Properties/} con el desplazamiento de cada archivo
+ * del ZIP, en lugar de una propiedad por archivo.</p>
+ *
+ * <p>Con {@code --index}, {@code encrypt} guarda junto a cada archivo cifrado su {@link LineIndex}; con ese indice,
+ * {@code decrypt --lines 1000-1020} descifra solo esas lineas (contando desde 1, ambas incluidas) y
+ * {@code decrypt --bytes 4096-8192} solo los caracteres que empiezan en esos bytes del archivo cifrado (contando
+ * desde 0, el final excluido, como las posiciones de {@code search}), sin leer el resto del archivo. El resultado se
+ * escribe en la salida estandar o en el archivo de {@code -o}.</p>
+ *
+ * <p>El comando {@code follow} sigue un archivo que crece, como un log, y cifra lo que se le anade con
+ * {@link LogFollower} en una salida que tambien crece ({@code Files/eF_<nombre>.txt} si no se indica {@code -o}), con
+ * una latencia maxima de {@code --latency} milisegundos (1000 por defecto), hasta que se detiene el proceso. Al
+ * volver a ejecutarlo sobre la misma salida continua donde se quedo.</p>
+ *
+ * <p>Con {@code --incremental}, {@code batch} escribe siempre en la misma carpeta y solo cifra los archivos nuevos o
+ * modificados desde la ejecucion anterior ({@link EncryptionCache}).</p>
+ *
+ * <p>El comando {@code verify} comprueba con {@link IntegrityVerifier} que archivos cifrados se descifran exactamente
+ * en su original, sin escribir el texto descifrado. Con {@code -s}, {@code --cipher} o {@code --compress} (para
+ * contenedores) las entradas son parejas de original y cifrado; sin ellas, cada entrada es un manifiesto de
+ * {@code batch} o un archivo cifrado registrado en el almacen de propiedades.</p>
+ *
+ * <p>El comando {@code search} busca un texto en archivos cifrados sin descifrarlos ({@link CipherSearch}): con
+ * {@code -s} o {@code --cipher} en los archivos y directorios indicados, y sin ellos en los archivos de un manifiesto
+ * o registrados en el almacen de propiedades, cada uno con su desplazamiento. Termina con codigo 1 si no encuentra
+ * nada.</p>
+ *
+ * <p>El comando {@code serve} inicia un {@link EncryptionService} en {@code localhost} (puerto 8080 por defecto) con
+ * {@code --threads} hilos de trabajo (uno por procesador por defecto) y se queda atendiendo peticiones hasta que se
+ * detiene el proceso.</p>
+ *
+ * <p>El metodo {@link #run(String[])} devuelve el codigo de salida: 0 si todo fue bien, 1 si fallo algun archivo y
+ * 2 si los argumentos no son validos.</p>
+ */
+public class CommandLine {
+    private static final int OK = 0;
+    private static final int ERROR = 1;
+    private static final int USAGE = 2;
+    private static final String STANDARD_STREAM = "-";
+
+    private String command;
+    private Integer shift;
+    private String cipher;
+    private String output;
+    private boolean mapped;
+    private boolean pipelined;
+    private boolean compress;
+    private boolean auto;
+    private boolean incremental;
+    private boolean index;
+    private boolean archive;
+    private long[] lines;
+    private long[] bytes;
+    private Integer threads;
+    private int port = 8080;
+    private int latency = 1000;
+    private Alphabet alphabet = Alphabet.getDefault();
+    private final List<String> inputs = new ArrayList<>();
+
+    /**
+     * Ejecuta el comando indicado por los argumentos.
+     *
+     * @param args Los argumentos de la linea de comandos.
+     * @return El codigo de salida del programa.
+     */
+    public int run(String[] args) {
+        try {
+            parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            return USAGE;
+        }
+        switch (command) {
+            case "encrypt":
+                return compress ? containerFiles(true) : archive ? archiveFiles(true) : shiftFiles(true);
+            case "decrypt":
+                return auto ? decryptAutomatically() : compress ? containerFiles(false)
+                        : archive ? archiveFiles(false) : shiftFiles(false);
+            case "detect":
+                return detectShifts();
+            case "decrypt-properties":
+                return decryptFromProperties();
+            case "follow":
+                return follow();
+            case "batch":
+                return encryptDirectory();
+            case "verify":
+                return verify();
+            case "search":
+                return search();
+            case "serve":
+                return serve();
+            case "help":
+                printUsage();
+                return OK;
+            default:
+                System.err.println("Error: Comando desconocido: " + command);
+                printUsage();
+                return USAGE;
+        }
+    }
+
+    /**
+     * Lee el comando, las opciones y las entradas de los argumentos.
+     *
+     * @param args Los argumentos de la linea de comandos.
+     * @throws IllegalArgumentException Si falta el valor de una opcion o no es valido.
+     */
+    private void parse(String[] args) {
+        command = args[0];
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-s":
+                case "--shift":
+                    shift = parseInteger(arg, value(args, ++i, arg));
+                    break;
+                case "--cipher":
+                    cipher = value(args, ++i, arg);
+                    break;
+                case "-o":
+                case "--output":
+                    output = value(args, ++i, arg);
+                    break;
+                case "--mapped":
+                    mapped = true;
+                    break;
+                case "--pipelined":
+                    pipelined = true;
+                    break;
+                case "--compress":
+                    compress = true;
+                    break;
+                case "--auto":
+                    auto = true;
+                    break;
+                case "--incremental":
+                    incremental = true;
+                    break;
+                case "--index":
+                    index = true;
+                    break;
+                case "--archive":
+                    archive = true;
+                    break;
+                case "--lines":
+                    lines = parseRange(arg, value(args, ++i, arg));
+                    if (lines[0] < 1) {
+                        throw new IllegalArgumentException("Las lineas se cuentan desde 1.");
+                    }
+                    break;
+                case "--bytes":
+                    bytes = parseRange(arg, value(args, ++i, arg));
+                    break;
+                case "--alphabet":
+                    alphabet = loadAlphabet(value(args, ++i, arg));
+                    break;
+                case "--metrics":
+                    OperationMetrics.setSink(MetricsSink.standardError());
+                    break;
+                case "--latency":
+                    latency = parseInteger(arg, value(args, ++i, arg));
+                    if (latency < 1) {
+                        throw new IllegalArgumentException("--latency debe ser al menos 1.");
+                    }
+                    break;
+                case "--port":
+                    port = parseInteger(arg, value(args, ++i, arg));
+                    break;
+                case "--threads":
+                    threads = parseInteger(arg, value(args, ++i, arg));
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("--threads debe ser al menos 1.");
+                    }
+                    break;
+                default:
+                    if (arg.startsWith("-") && !arg.equals(STANDARD_STREAM)) {
+                        throw new IllegalArgumentException("Opcion desconocida: " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+    }
+
+    /**
+     * Cifra o descifra las entradas.
+     *
+     * @param encrypt {@code true} para cifrar, {@code false} para descifrar.
+     * @return El codigo de salida.
+     */
+    private int shiftFiles(boolean encrypt) {
+        if ((shift == null) == (cipher == null)) {
+            return usage("Indique el desplazamiento (-s) o el cifrado (--cipher), pero no ambos.");
+        }
+        if (encrypt ? lines != null || bytes != null : index) {
+            return usage(encrypt ? "--lines y --bytes solo se admiten al descifrar." : "--index solo se admite al cifrar.");
+        }
+        if (index && mapped) {
+            return usage("--index no se admite con --mapped.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(threads != null ? threads : 1, alphabet);
+        manager.setSegmentado(pipelined);
+        manager.setIndexado(index);
+        CipherEngine engine;
+        try {
+            engine = manager.crearMotor(cipher != null ? cipher : "cesar:" + shift);
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        }
+        if (lines != null || bytes != null) {
+            return decryptRange(manager, engine);
+        }
+        if (inputs.size() > 1 || (inputs.size() == 1 && output == null && !isStandard(inputs.get(0)))) {
+            if (output != null) {
+                return usage("La opcion -o solo se admite con una entrada.");
+            }
+            return shiftToFilesDirectory(manager, engine, encrypt);
+        }
+
+        String input = inputs.isEmpty() ? STANDARD_STREAM : inputs.get(0);
+        if (!isStandard(input) && output != null && !isStandard(output)) {
+            boolean ok = encrypt ? manager.cifrarArchivo(input, output, engine, mapped)
+                    : manager.descifrarArchivo(input, output, engine, mapped);
+            return ok ? OK : ERROR;
+        }
+        if (index) {
+            return usage("--index necesita un archivo de entrada y uno de salida.");
+        }
+        try (InputStream in = isStandard(input) ? System.in : new FileInputStream(input);
+             OutputStream out = output == null || isStandard(output) ? System.out : new FileOutputStream(output)) {
+            boolean ok = encrypt ? manager.cifrarFlujo(in, out, engine) : manager.descifrarFlujo(in, out, engine);
+            return ok ? OK : ERROR;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return ERROR;
+        }
+    }
+
+    /**
+     * Descifra el rango de lineas o de bytes de {@code --lines} o {@code --bytes} de un archivo cifrado con indice.
+     *
+     * @return El codigo de salida.
+     */
+    private int decryptRange(ManagerEncryption manager, CipherEngine engine) {
+        if (lines != null && bytes != null) {
+            return usage("Indique --lines o --bytes, pero no ambos.");
+        }
+        if (inputs.size() != 1 || isStandard(inputs.get(0)) || mapped || pipelined) {
+            return usage("--lines y --bytes necesitan un unico archivo cifrado, sin --mapped ni --pipelined.");
+        }
+        try (OutputStream out = output == null || isStandard(output) ? System.out : new FileOutputStream(output)) {
+            boolean ok = lines != null ? manager.descifrarRango(inputs.get(0), out, engine, true, lines[0] - 1, lines[1])
+                    : manager.descifrarRango(inputs.get(0), out, engine, false, bytes[0], bytes[1]);
+            return ok ? OK : ERROR;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return ERROR;
+        }
+    }
+
+    /**
+     * Cifra las entradas en un {@link CompressedContainer} o descifra contenedores, con el cifrado de su cabecera.
+     *
+     * @param encrypt {@code true} para cifrar, {@code false} para descifrar.
+     * @return El codigo de salida.
+     */
+    private int containerFiles(boolean encrypt) {
+        if (encrypt && (shift == null) == (cipher == null)) {
+            return usage("Indique el desplazamiento (-s) o el cifrado (--cipher), pero no ambos.");
+        }
+        if (!encrypt && (shift != null || cipher != null)) {
+            return usage("El cifrado de un contenedor se lee de su cabecera; no indique -s ni --cipher.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        String especificacion = cipher != null ? cipher : "cesar:" + shift;
+        if (encrypt) {
+            try {
+                manager.crearMotor(especificacion);
+            } catch (IllegalArgumentException e) {
+                return usage(e.getMessage());
+            }
+        }
+        if (inputs.size() > 1 || (inputs.size() == 1 && output == null && !isStandard(inputs.get(0)))) {
+            if (output != null) {
+                return usage("La opcion -o solo se admite con una entrada.");
+            }
+            int status = OK;
+            for (String input : inputs) {
+                String outputPath = encrypt ? manager.manejoDelCifradoComprimido(input, especificacion)
+                        : manager.manejoDelDescifradoComprimido(input);
+                if (outputPath == null) {
+                    status = ERROR;
+                }
+            }
+            return status;
+        }
+
+        String input = inputs.isEmpty() ? STANDARD_STREAM : inputs.get(0);
+        try (InputStream in = isStandard(input) ? System.in : new FileInputStream(input);
+             OutputStream out = output == null || isStandard(output) ? System.out : new FileOutputStream(output)) {
+            boolean ok = encrypt ? manager.cifrarFlujoComprimido(in, out, especificacion)
+                    : manager.descifrarFlujoComprimido(in, out);
+            return ok ? OK : ERROR;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return ERROR;
+        }
+    }
+
+    /**
+     * Cifra o descifra los archivos de cada ZIP de las entradas en otro ZIP.
+     *
+     * @param encrypt {@code true} para cifrar, {@code false} para descifrar.
+     * @return El codigo de salida; {@code ERROR} si fallo algun ZIP.
+     */
+    private int archiveFiles(boolean encrypt) {
+        if ((shift == null) == (cipher == null)) {
+            return usage("Indique el desplazamiento (-s) o el cifrado (--cipher), pero no ambos.");
+        }
+        if (inputs.isEmpty() || inputs.contains(STANDARD_STREAM) || (output != null && isStandard(output))) {
+            return usage("--archive necesita archivos ZIP de entrada y de salida.");
+        }
+        if (output != null && inputs.size() > 1) {
+            return usage("La opcion -o solo se admite con una entrada.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        CipherEngine engine;
+        try {
+            engine = manager.crearMotor(cipher != null ? cipher : "cesar:" + shift);
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        }
+        int status = OK;
+        for (String input : inputs) {
+            String outputPath = encrypt ? manager.manejoDelCifradoZip(input, output, engine, shift)
+                    : manager.manejoDelDescifradoZip(input, output, engine);
+            if (outputPath == null) {
+                status = ERROR;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Cifra o descifra cada entrada en {@code Files/}, como desde el menu.
+     *
+     * @return El codigo de salida; {@code ERROR} si fallo algun archivo.
+     */
+    private int shiftToFilesDirectory(ManagerEncryption manager, CipherEngine engine, boolean encrypt) {
+        int status = OK;
+        for (String input : inputs) {
+            if (encrypt) {
+                String outputPath = manager.manejoDelCifrado(input, engine, mapped);
+                if (outputPath == null) {
+                    status = ERROR;
+                    continue;
+                }
+                if (shift != null) {
+                    manager.guardarProperties(input, shift, outputPath);
+                }
+            } else if (!manager.manejoDelDecifrado(input, engine, mapped)) {
+                status = ERROR;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Descifra cada entrada calculando su desplazamiento con analisis de frecuencias.
+     *
+     * @return El codigo de salida.
+     */
+    private int decryptAutomatically() {
+        if (inputs.isEmpty() || inputs.contains(STANDARD_STREAM)) {
+            return usage("decrypt --auto necesita archivos de entrada.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        int status = OK;
+        for (String input : inputs) {
+            if (manager.manejoDelDescifradoAutomatico(input) < 0) {
+                status = ERROR;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Muestra el desplazamiento detectado de cada entrada, una linea por archivo.
+     *
+     * @return El codigo de salida.
+     */
+    private int detectShifts() {
+        if (inputs.isEmpty()) {
+            return usage("Falta el archivo cifrado.");
+        }
+        Descifrar descifrar = new Descifrar(alphabet);
+        int status = OK;
+        for (String input : inputs) {
+            int detected = descifrar.detectarDesplazamiento(input);
+            if (detected < 0) {
+                status = ERROR;
+                continue;
+            }
+            System.out.println(input + "\t" + detected);
+        }
+        return status;
+    }
+
+    /**
+     * Descifra cada archivo cifrado con el desplazamiento registrado en el almacen de propiedades, o cada archivo de
+     * propiedades antiguo indicado.
+     *
+     * @return El codigo de salida.
+     */
+    private int decryptFromProperties() {
+        if (inputs.isEmpty()) {
+            return usage("Falta el archivo cifrado o de propiedades.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        int status = OK;
+        for (String propertiesPath : inputs) {
+            if (!manager.procesarDescifradoDesdePropiedades(propertiesPath)) {
+                status = ERROR;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Cifra un directorio completo con {@link BatchEncryptor}.
+     *
+     * @return El codigo de salida.
+     */
+    private int encryptDirectory() {
+        if (shift == null || inputs.size() != 1) {
+            return usage("batch necesita un desplazamiento (-s) y un directorio.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        return manager.manejoDelCifradoDirectorio(inputs.get(0), shift, incremental) != null ? OK : ERROR;
+    }
+
+    /**
+     * Sigue un archivo que crece y cifra lo que se le anade hasta que se detiene el proceso.
+     *
+     * @return El codigo de salida.
+     */
+    private int follow() {
+        if ((shift == null) == (cipher == null)) {
+            return usage("Indique el desplazamiento (-s) o el cifrado (--cipher), pero no ambos.");
+        }
+        if (inputs.size() != 1 || isStandard(inputs.get(0)) || (output != null && isStandard(output))) {
+            return usage("follow necesita un archivo de entrada y uno de salida.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        CipherEngine engine;
+        try {
+            engine = manager.crearMotor(cipher != null ? cipher : "cesar:" + shift);
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        }
+        String input = inputs.get(0);
+        String outputPath = output != null ? output : new MyFileHandler().generateFollowPath(input, "eF");
+        LogFollower follower = new LogFollower(new Cifrar(alphabet), latency);
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            follower.stop();                                        // Termina el lote actual y guarda el estado
+            try {
+                finished.await(2L * latency + 1000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        System.err.println("Siguiendo " + input + " en " + outputPath + " (latencia maxima " + latency + " ms)");
+        boolean ok = follower.follow(input, outputPath, engine);
+        System.err.printf("Lotes escritos: %d, bytes cifrados: %d%n", follower.getBatches(), follower.getBytesRead());
+        finished.countDown();
+        return ok ? OK : ERROR;
+    }
+
+    /**
+     * Verifica que los archivos cifrados se descifran en su original.
+     *
+     * @return El codigo de salida; {@code ERROR} si algun archivo no coincide.
+     */
+    private int verify() {
+        if (shift != null && cipher != null) {
+            return usage("Indique el desplazamiento (-s) o el cifrado (--cipher), pero no ambos.");
+        }
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        List<IntegrityVerifier.Task> tasks = new ArrayList<>();
+        if (shift != null || cipher != null || compress) {
+            if (inputs.isEmpty() || inputs.size() % 2 != 0) {
+                return usage("verify necesita parejas de archivo original y cifrado.");
+            }
+            String especificacion = compress ? null : cipher != null ? cipher : "cesar:" + shift;
+            for (int i = 0; i < inputs.size(); i += 2) {
+                tasks.add(new IntegrityVerifier.Task(inputs.get(i), inputs.get(i + 1), especificacion));
+            }
+        } else {
+            if (inputs.isEmpty()) {
+                return usage("verify necesita un manifiesto o un archivo cifrado.");
+            }
+            PropertiesStore store = new PropertiesStore();
+            for (String input : inputs) {
+                List<IntegrityVerifier.Task> manifest = IntegrityVerifier.readManifest(input);
+                PropertiesStore.Entry entry = manifest == null ? store.findByEncrypted(input) : null;
+                if (manifest != null) {
+                    tasks.addAll(manifest);
+                } else if (entry != null) {
+                    tasks.add(new IntegrityVerifier.Task(entry.getOriginalPath(), entry.getEncryptedPath(),
+                            "cesar:" + entry.getShift()));
+                } else {
+                    System.err.println("Error: No es un manifiesto ni un archivo cifrado registrado: " + input);
+                    return ERROR;
+                }
+            }
+        }
+        IntegrityVerifier verifier = new IntegrityVerifier(manager,
+                threads != null ? threads : Runtime.getRuntime().availableProcessors());
+        return verifier.verify(tasks) == 0 ? OK : ERROR;
+    }
+
+    /**
+     * Busca un texto en archivos cifrados sin descifrarlos.
+     *
+     * @return El codigo de salida; {@code ERROR} si no hay coincidencias o algun archivo no se pudo leer.
+     */
+    private int search() {
+        if (shift != null && cipher != null) {
+            return usage("Indique el desplazamiento (-s) o el cifrado (--cipher), pero no ambos.");
+        }
+        if (inputs.size() < 2) {
+            return usage("search necesita un patron y al menos un archivo.");
+        }
+        String pattern = inputs.get(0);
+        ManagerEncryption manager = new ManagerEncryption(1, alphabet);
+        List<CipherSearch.Target> targets = new ArrayList<>();
+        try {
+            if (shift != null || cipher != null) {
+                CipherEngine engine = manager.crearMotor(cipher != null ? cipher : "cesar:" + shift);
+                for (String input : inputs.subList(1, inputs.size())) {
+                    try (Stream<Path> walk = Files.walk(Paths.get(input))) {
+                        walk.filter(Files::isRegularFile).sorted()
+                                .forEach(path -> targets.add(new CipherSearch.Target(path.toString(), engine)));
+                    }
+                }
+            } else {
+                PropertiesStore store = new PropertiesStore();
+                for (String input : inputs.subList(1, inputs.size())) {
+                    List<IntegrityVerifier.Task> manifest = IntegrityVerifier.readManifest(input);
+                    PropertiesStore.Entry entry = manifest == null ? store.findByEncrypted(input) : null;
+                    if (manifest != null) {
+                        for (IntegrityVerifier.Task task : manifest) {
+                            targets.add(new CipherSearch.Target(task.getEncryptedPath(), manager.crearMotor(task.getCipher())));
+                        }
+                    } else if (entry != null) {
+                        targets.add(new CipherSearch.Target(entry.getEncryptedPath(), manager.crearMotor("cesar:" + entry.getShift())));
+                    } else {
+                        System.err.println("Error: No es un manifiesto ni un archivo cifrado registrado: " + input);
+                        return ERROR;
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return ERROR;
+        }
+        CipherSearch search = new CipherSearch(threads != null ? threads : Runtime.getRuntime().availableProcessors());
+        return search.search(pattern, targets) > 0 ? OK : ERROR;
+    }
+
+    /**
+     * Inicia el servicio de cifrado y espera hasta que se detenga el proceso.
+     *
+     * @return El codigo de salida, si no se pudo iniciar el servicio.
+     */
+    private int serve() {
+        EncryptionService service = new EncryptionService(new ManagerEncryption(1, alphabet),
+                threads != null ? threads : Runtime.getRuntime().availableProcessors());
+        try {
+            service.start(port);
+        } catch (IOException e) {
+            System.err.println("Error: No se pudo iniciar el servicio: " + e.getMessage());
+            return ERROR;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+        System.err.println("Servicio de cifrado en http://localhost:" + service.getPort()
+                + " (POST /encrypt, POST /decrypt, GET /stats)");
+        try {
+            Thread.currentThread().join();                          // Atiende peticiones hasta que se detenga
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return OK;
+    }
+
+    private int usage(String message) {
+        System.err.println("Error: " + message);
+        printUsage();
+        return USAGE;
+    }
+
+    private static boolean isStandard(String path) {
+        return STANDARD_STREAM.equals(path);
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Falta el valor de " + option + ".");
+        }
+        return args[index];
+    }
+
+    private static Alphabet loadAlphabet(String path) {
+        try {
+            return Alphabet.load(Paths.get(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("No se pudo leer el alfabeto " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static int parseInteger(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " debe ser un numero entero: " + value);
+        }
+    }
+
+    /**
+     * Lee un rango {@code desde-hasta} de {@code --lines} o {@code --bytes}.
+     */
+    private static long[] parseRange(String option, String value) {
+        String[] limits = value.split("-", -1);
+        try {
+            if (limits.length == 2) {
+                long[] range = {Long.parseLong(limits[0].trim()), Long.parseLong(limits[1].trim())};
+                if (range[0] >= 0 && range[1] >= range[0]) {
+                    return range;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo
+        }
+        throw new IllegalArgumentException(option + " debe ser un rango desde-hasta: " + value);
+    }
+
+    /**
+     * Muestra la ayuda de la linea de comandos en la salida de error.
+     */
+    private static void printUsage() {
+        System.err.println("Uso:");
+        System.err.println("  java Main                          (menu interactivo)");
+        System.err.println("  java Main encrypt (-s <desplazamiento> | --cipher <tipo:clave>) [-o <salida>] [--mapped | --pipelined] [--threads <n>] [<entrada>...]");
+        System.err.println("  java Main decrypt (-s <desplazamiento> | --cipher <tipo:clave>) [-o <salida>] [--mapped | --pipelined] [--threads <n>] [<entrada>...]");
+        System.err.println("  java Main encrypt (-s <desplazamiento> | --cipher <tipo:clave>) --compress [-o <salida>] [<entrada>...]");
+        System.err.println("  java Main encrypt (-s <desplazamiento> | --cipher <tipo:clave>) --archive [-o <salida.zip>] <archivo.zip>...");
+        System.err.println("  java Main decrypt (-s <desplazamiento> | --cipher <tipo:clave>) --archive [-o <salida.zip>] <archivo.zip>...");
+        System.err.println("  java Main encrypt (-s <desplazamiento> | --cipher <tipo:clave>) --index [--pipelined] [-o <salida>] <entrada>...");
+        System.err.println("  java Main decrypt (-s <desplazamiento> | --cipher <tipo:clave>) (--lines <desde-hasta> | --bytes <desde-hasta>) [-o <salida>] <cifrado>");
+        System.err.println("  java Main decrypt --compress [-o <salida>] [<entrada>...]");
+        System.err.println("  java Main decrypt --auto <entrada>...");
+        System.err.println("  java Main detect <entrada>...");
+        System.err.println("  java Main decrypt-properties <cifrado|proper.txt|contenedor.ccz>...");
+        System.err.println("  java Main follow (-s <desplazamiento> | --cipher <tipo:clave>) [--latency <ms>] [-o <salida>] <entrada>");
+        System.err.println("  java Main batch -s <desplazamiento> [--incremental] <directorio>");
+        System.err.println("  java Main verify (-s <desplazamiento> | --cipher <tipo:clave> | --compress) [--threads <n>] <original> <cifrado>...");
+        System.err.println("  java Main verify [--threads <n>] <manifiesto|cifrado>...");
+        System.err.println("  java Main search (-s <desplazamiento> | --cipher <tipo:clave>) [--threads <n>] <patron> <archivo|directorio>...");
+        System.err.println("  java Main search [--threads <n>] <patron> <manifiesto|cifrado>...");
+        System.err.println("  java Main serve [--port <puerto>] [--threads <n>]");
+        System.err.println("Cifrados (--cipher): cesar:3, vigenere:CLAVE, afin:5,8, alfabeto:PALABRA");
+        System.err.println("Todos los comandos admiten --alphabet <archivo> (por ejemplo Alfabetos/cirilico.txt) y --metrics");
+        System.err.println("(tiempos y contadores de cada operacion en la salida de error).");
+        System.err.println("Use '-' como entrada o salida para la entrada o salida estandar.");
+    }
+}
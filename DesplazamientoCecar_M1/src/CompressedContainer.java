@@ -0,0 +1,241 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * La clase {@code CompressedContainer} escribe y lee el contenedor comprimido de un texto cifrado: un archivo que
+ * ocupa menos que el texto y que incluye todo lo necesario para descifrarlo, sin un registro en el
+ * {@link PropertiesStore} ni un {@code proper_*.txt}.
+ *
+ * <p>Formato del contenedor:</p>
+ * <pre>
+ * cabecera: int MAGIC | byte version | utf cifrado | int alfabeto
+ * cuerpo:   el texto cifrado en UTF-8, comprimido con Deflate
+ * final:    long bytesOriginales | long bytesCifrados | int crc32
+ * </pre>
+ * <p>donde {@code cifrado} es la descripcion del motor de {@link ManagerEncryption#crearMotor(String)} (por ejemplo
+ * {@code cesar:3}), {@code alfabeto} identifica el alfabeto con el que se cifro, {@code bytesOriginales} es el
+ * tamano del texto sin cifrar y {@code crc32} la suma de verificacion del texto cifrado sin comprimir. El tamano y
+ * la suma van al final, y no en la cabecera, para que el contenedor se pueda escribir y leer en un solo recorrido
+ * desde un flujo, sin conocer antes el tamano del texto ni volver atras.</p>
+ */
+public class CompressedContainer {
+    /**
+     * La extension de los archivos con un contenedor.
+     */
+    public static final String EXTENSION = ".ccz";
+
+    private static final int MAGIC = 0x43435A31;            // "CCZ1"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MyFileHandler fileHandler;
+
+    /**
+     * Constructor de la clase {@code CompressedContainer}.
+     *
+     * @param fileHandler El manejador con el que se transforman los flujos.
+     */
+    public CompressedContainer(MyFileHandler fileHandler) {
+        this.fileHandler = fileHandler;
+    }
+
+    /**
+     * Comprueba si un archivo empieza con la cabecera de un contenedor.
+     *
+     * @param path La ruta del archivo.
+     * @return {@code true} si es un contenedor, o {@code false} si no lo es o no se puede leer.
+     */
+    public static boolean isContainer(String path) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Cifra un flujo y lo escribe como contenedor. Los flujos no se cierran.
+     *
+     * @param input El flujo con el texto, en UTF-8.
+     * @param output El flujo donde se escribe el contenedor.
+     * @param cipher La descripcion del motor de cifrado, que se guarda en la cabecera.
+     * @param alphabet El alfabeto del cifrado.
+     * @param encryptor La transformacion que cifra cada bloque.
+     * @param metrics Las mediciones de la operacion, o {@code null} para no medir.
+     * @return {@code true} si el contenedor se escribio completo, o {@code false} si ocurre un error.
+     */
+    public boolean write(InputStream input, OutputStream output, String cipher, Alphabet alphabet,
+                         Consumer<CharBuffer> encryptor, OperationMetrics metrics) {
+        CountingInputStream counted = new CountingInputStream(input);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            DataOutputStream container = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+            container.writeInt(MAGIC);
+            container.writeByte(VERSION);
+            container.writeUTF(cipher);
+            container.writeInt(alphabetId(alphabet));
+
+            DeflaterOutputStream compressed = new DeflaterOutputStream(container, deflater, BUFFER_SIZE);
+            CheckedOutputStream body = new CheckedOutputStream(compressed, new CRC32());
+            if (!fileHandler.transformStream(counted, body, encryptor, metrics)) {
+                return false;
+            }
+            compressed.finish();                            // Termina el cuerpo sin cerrar el flujo
+            container.writeLong(counted.count);
+            container.writeLong(deflater.getBytesRead());
+            container.writeInt((int) body.getChecksum().getValue());
+            container.flush();
+        } catch (IOException e) {
+            System.err.println("Error al escribir el contenedor: " + e.getMessage());
+            return false;
+        } finally {
+            deflater.end();
+        }
+        return true;
+    }
+
+    /**
+     * Lee un contenedor de un flujo, lo descifra y escribe el texto en otro flujo. Los flujos no se cierran.
+     *
+     * <p>El texto se escribe a medida que se descomprime, por lo que si el contenedor esta danado el error se
+     * detecta al final, al comparar la suma de verificacion, y la salida ya escrita no es valida.</p>
+     *
+     * @param input El flujo con el contenedor.
+     * @param output El flujo donde se escribe el texto descifrado, en UTF-8.
+     * @param alphabet El alfabeto del descifrado, que debe ser el mismo con el que se cifro.
+     * @param decryptors Obtiene la transformacion que descifra cada bloque a partir de la descripcion del cifrado
+     *                   guardada en la cabecera.
+     * @param metrics Las mediciones de la operacion, o {@code null} para no medir.
+     * @return {@code true} si el contenedor se descifro y la suma de verificacion coincide, o {@code false} si no es
+     *         un contenedor, esta danado o ocurre un error.
+     */
+    public boolean read(InputStream input, OutputStream output, Alphabet alphabet,
+                        Function<String, Consumer<CharBuffer>> decryptors, OperationMetrics metrics) {
+        PushbackInputStream source = new PushbackInputStream(input, BUFFER_SIZE);
+        DataInputStream container = new DataInputStream(source);
+        Inflater inflater = new Inflater();
+        try {
+            if (container.readInt() != MAGIC) {
+                System.err.println("Error: El archivo no es un contenedor cifrado.");
+                return false;
+            }
+            int version = container.readUnsignedByte();
+            if (version != VERSION) {
+                System.err.println("Error: Version de contenedor no soportada: " + version);
+                return false;
+            }
+            String cipher = container.readUTF();
+            if (container.readInt() != alphabetId(alphabet)) {
+                System.err.println("Error: El contenedor se cifro con otro alfabeto.");
+                return false;
+            }
+            Consumer<CharBuffer> decryptor;
+            try {
+                decryptor = decryptors.apply(cipher);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: Cifrado del contenedor no valido: " + e.getMessage());
+                return false;
+            }
+
+            BodyInputStream compressed = new BodyInputStream(source, inflater);
+            CheckedInputStream body = new CheckedInputStream(compressed, new CRC32());
+            if (!fileHandler.transformStream(body, output, decryptor, metrics)) {
+                return false;
+            }
+            compressed.returnUnused();                      // Lo que se leyo de mas es el final del contenedor
+            container.readLong();                           // Tamano original, solo informativo
+            long length = container.readLong();
+            int checksum = container.readInt();
+            if (length != inflater.getBytesWritten() || checksum != (int) body.getChecksum().getValue()) {
+                System.err.println("Error: El contenedor esta danado (la suma de verificacion no coincide).");
+                return false;
+            }
+        } catch (EOFException e) {
+            System.err.println("Error: El contenedor esta incompleto.");
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error al leer el contenedor: " + e.getMessage());
+            return false;
+        } finally {
+            inflater.end();
+        }
+        return true;
+    }
+
+    /**
+     * Identifica un alfabeto para comprobar que se descifra con el mismo con el que se cifro.
+     */
+    private static int alphabetId(Alphabet alphabet) {
+        return alphabet.getAlphabetString().hashCode();
+    }
+
+    /**
+     * Cuerpo comprimido de un contenedor. {@link InflaterInputStream} lee la entrada por bloques, asi que al terminar
+     * el cuerpo ya ha leido parte del final del contenedor; {@link #returnUnused()} lo devuelve al flujo.
+     */
+    private static final class BodyInputStream extends InflaterInputStream {
+        private final PushbackInputStream source;
+
+        private BodyInputStream(PushbackInputStream source, Inflater inflater) {
+            super(source, inflater, BUFFER_SIZE);
+            this.source = source;
+        }
+
+        private void returnUnused() throws IOException {
+            int unused = inf.getRemaining();
+            source.unread(buf, len - unused, unused);
+        }
+
+        @Override
+        public void close() {
+            // El flujo de entrada no es nuestro
+        }
+    }
+
+    /**
+     * Cuenta los bytes leidos de un flujo.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -1,8 +1,22 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
 
 /**
  * La clase {@code Descifrar} proporciona metodos para desencriptar texto utilizando un desplazamiento
@@ -15,19 +29,31 @@ import java.nio.file.Paths;
  * </p>
  */
 public class Descifrar {
+    private static final int BLOCK_SIZE = 8192;     // Caracteres por lectura al descifrar un rango
     private final Alphabet alphabet;
     private final MyFileHandler fileHandler;
+    private final CipherEngine[] caesarEngines;     // Un motor por desplazamiento normalizado, creado bajo demanda
 
     /**
      * Constructor de la clase {@code Descifrar}.
      * <p>
-     * Inicializa una nueva instancia de {@code Descifrar} creando un objeto de {@link Alphabet}
-     * y un objeto de {@link MyFileHandler} para manejar operaciones de archivo.
+     * Inicializa una nueva instancia de {@code Descifrar} con el alfabeto predeterminado
+     * ({@link Alphabet#getDefault()}) y un objeto de {@link MyFileHandler} para manejar operaciones de archivo.
      * </p>
      */
     public Descifrar() {
-        this.alphabet = new Alphabet();
+        this(Alphabet.getDefault());
+    }
+
+    /**
+     * Constructor de la clase {@code Descifrar} con otro alfabeto, por ejemplo uno cargado con {@link Alphabet#load}.
+     *
+     * @param alphabet El alfabeto que se utilizara para la desencriptacion.
+     */
+    public Descifrar(Alphabet alphabet) {
+        this.alphabet = alphabet;
         this.fileHandler = new MyFileHandler();
+        this.caesarEngines = new CipherEngine[alphabet.size()];
     }
 
     /**
@@ -46,25 +72,315 @@ public class Descifrar {
     }
 
     /**
-     * Desplaza los caracteres del texto segun el desplazamiento especificado.
+     * Desencripta un texto con cualquier motor de cifrado (Cesar, Vigenere, afin...).
+     *
+     * @param text el texto encriptado que se desea desencriptar.
+     * @param engine el motor con el que se encripto el texto.
+     * @return el texto desencriptado.
+     */
+    public String decrypt(String text, CipherEngine engine) {
+        char[] result = text.toCharArray();
+        engine.decrypt(result, 0, result.length, 0);
+        return new String(result);
+    }
+
+    /**
+     * Desencripta en el mismo lugar los caracteres restantes de un {@link CharBuffer}.
+     * <p>
+     * Se desencriptan los caracteres entre {@code position} y {@code limit} sin crear copias. La posicion y el
+     * limite del buffer no se modifican.
+     * </p>
+     *
+     * @param buffer el buffer cuyos caracteres restantes se desencriptaran.
+     * @param desplazamiento el numero de posiciones que se utilizo al encriptar.
+     */
+    public void decrypt(CharBuffer buffer, int desplazamiento) {
+        decrypt(buffer, caesar(desplazamiento), 0);
+    }
+
+    /**
+     * Desencripta en el mismo lugar los caracteres restantes de un {@link CharBuffer} con un motor de cifrado.
+     *
+     * @param buffer el buffer cuyos caracteres restantes se desencriptaran.
+     * @param engine el motor con el que se encripto el texto.
+     * @param position la posicion en el texto completo del primer caracter restante del buffer.
+     */
+    public void decrypt(CharBuffer buffer, CipherEngine engine, long position) {
+        if (buffer.hasArray()) {                                    // Acceso directo al arreglo del buffer
+            int offset = buffer.arrayOffset();
+            engine.decrypt(buffer.array(), offset + buffer.position(), offset + buffer.limit(), position);
+            return;
+        }
+        char[] scratch = Cifrar.scratch();                          // Buffer directo: por tramos en el arreglo auxiliar
+        int base = buffer.position();
+        int remaining = buffer.remaining();
+        for (int i = 0, length; i < remaining; i += length) {
+            length = Cifrar.chunkLength(buffer, i, remaining);
+            buffer.get(base + i, scratch, 0, length);
+            engine.decrypt(scratch, 0, length, position + i);
+            buffer.put(base + i, scratch, 0, length);
+        }
+    }
+
+    /**
+     * Desencripta en el mismo lugar un rango de un arreglo de caracteres, sin crear ningun objeto.
+     *
+     * @param chars el arreglo de caracteres.
+     * @param from la posicion inicial (incluida).
+     * @param to la posicion final (excluida).
+     * @param desplazamiento el numero de posiciones que se utilizo al encriptar.
+     */
+    public void decrypt(char[] chars, int from, int to, int desplazamiento) {
+        caesar(desplazamiento).decrypt(chars, from, to, 0);
+    }
+
+    /**
+     * Desencripta un rango de un texto y escribe el resultado en un arreglo del llamador, sin crear ningun objeto.
+     * Ver {@link Cifrar#encrypt(CharSequence, int, int, char[], int, int)}.
+     *
+     * @param source el texto encriptado.
+     * @param start la posicion inicial en el origen (incluida).
+     * @param end la posicion final en el origen (excluida).
+     * @param target el arreglo de destino.
+     * @param offset la posicion del destino donde se escribe el primer caracter.
+     * @param desplazamiento el numero de posiciones que se utilizo al encriptar.
+     * @return la posicion del destino siguiente al ultimo caracter escrito.
+     * @throws IndexOutOfBoundsException si el rango no es valido o el destino no tiene espacio suficiente.
+     */
+    public int decrypt(CharSequence source, int start, int end, char[] target, int offset, int desplazamiento) {
+        return decrypt(source, start, end, target, offset, caesar(desplazamiento), 0);
+    }
+
+    /**
+     * Desencripta un rango de un texto con un motor de cifrado y escribe el resultado en un arreglo del llamador.
+     *
+     * @param source el texto encriptado.
+     * @param start la posicion inicial en el origen (incluida).
+     * @param end la posicion final en el origen (excluida).
+     * @param target el arreglo de destino.
+     * @param offset la posicion del destino donde se escribe el primer caracter.
+     * @param engine el motor con el que se encripto el texto.
+     * @param position la posicion de {@code source.charAt(start)} en el texto completo.
+     * @return la posicion del destino siguiente al ultimo caracter escrito.
+     * @throws IndexOutOfBoundsException si el rango no es valido o el destino no tiene espacio suficiente.
+     */
+    public int decrypt(CharSequence source, int start, int end, char[] target, int offset, CipherEngine engine,
+                       long position) {
+        Cifrar.copyChars(source, start, end, target, offset);
+        engine.decrypt(target, offset, offset + (end - start), position);
+        return offset + (end - start);
+    }
+
+    /**
+     * Desencripta un texto y lo escribe en un {@link CharBuffer} del llamador a partir de su posicion, que avanza
+     * como con {@link CharBuffer#put(String)}. No crea ningun objeto.
+     *
+     * @param source el texto encriptado.
+     * @param target el buffer de destino.
+     * @param desplazamiento el numero de posiciones que se utilizo al encriptar.
+     * @throws BufferOverflowException si el buffer no tiene espacio para todo el texto.
+     */
+    public void decrypt(CharSequence source, CharBuffer target, int desplazamiento) {
+        decrypt(source, target, caesar(desplazamiento), 0);
+    }
+
+    /**
+     * Desencripta un texto con un motor de cifrado y lo escribe en un {@link CharBuffer} del llamador a partir de
+     * su posicion, que avanza como con {@link CharBuffer#put(String)}.
+     *
+     * @param source el texto encriptado.
+     * @param target el buffer de destino.
+     * @param engine el motor con el que se encripto el texto.
+     * @param position la posicion de {@code source.charAt(0)} en el texto completo.
+     * @throws BufferOverflowException si el buffer no tiene espacio para todo el texto.
+     */
+    public void decrypt(CharSequence source, CharBuffer target, CipherEngine engine, long position) {
+        int length = source.length();
+        if (target.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int start = target.position();
+        if (target.hasArray()) {
+            decrypt(source, 0, length, target.array(), target.arrayOffset() + start, engine, position);
+        } else {
+            char[] scratch = Cifrar.scratch();
+            for (int i = 0, chunk; i < length; i += chunk) {
+                chunk = Cifrar.chunkLength(source, i, length);
+                decrypt(source, i, i + chunk, scratch, 0, engine, position + i);
+                target.put(start + i, scratch, 0, chunk);
+            }
+        }
+        target.position(start + length);
+    }
+
+    /**
+     * Crea una funcion que desencripta los bloques sucesivos de un texto, recordando cuantos caracteres ha
+     * desencriptado para continuar la clave entre bloques. Se debe crear una por archivo.
      *
-     * <p>Este metodo itera sobre cada caracter del texto, obtiene su indice en el
-     * alfabeto y calcula un nuevo indice basado en el desplazamiento. Si el caracter
-     * no esta en el alfabeto, se agrega tal cual al resultado. El nuevo caracter se
-     * obtiene del alfabeto utilizando el nuevo indice calculado.</p>
+     * @param engine el motor con el que se encripto el texto.
+     * @return la funcion que desencripta cada bloque en el mismo lugar.
+     */
+    public Consumer<CharBuffer> decryptor(CipherEngine engine) {
+        long[] position = {0};
+        return buffer -> {
+            decrypt(buffer, engine, position[0]);
+            position[0] += buffer.remaining();
+        };
+    }
+
+    /**
+     * Desencripta solo un rango de lineas de un archivo cifrado con indice ({@link LineIndex}), sin leer el resto
+     * del archivo: salta al punto de control del indice anterior a la primera linea y desencripta desde alli, por lo
+     * que el tiempo depende del tamano del rango y no del archivo.
      *
-     * <p>El {@code StringBuilder result} almacena los caracteres resultantes del texto
-     * desencriptado. Para poder iterar por los caracteres, el texto es convertido a un arreglo
-     * de caracteres utilizando {@code text.toCharArray()}. Se obtiene el indice del
-     * caracter actual en el alfabeto; si el indice es {@code -1}, se agrega el caracter
-     * original al resultado sin cambios.</p>
+     * @param encryptedPath la ruta del archivo encriptado, con su indice al lado.
+     * @param engine el motor con el que se encripto el texto.
+     * @param firstLine la primera linea que se desencripta, contando desde 0 (incluida).
+     * @param endLine la ultima linea (excluida).
+     * @param output el flujo donde se escribe el texto desencriptado, en UTF-8. No se cierra.
+     * @return {@code true} si el rango se desencripto, o {@code false} si no hay indice o hubo un error.
+     */
+    public boolean decryptLines(String encryptedPath, CipherEngine engine, long firstLine, long endLine,
+                                OutputStream output) {
+        return decryptRange(encryptedPath, engine, true, firstLine, endLine, output);
+    }
+
+    /**
+     * Desencripta solo los caracteres de un archivo cifrado con indice ({@link LineIndex}) que empiezan en un rango
+     * de bytes, por ejemplo alrededor de una coincidencia de {@link CipherSearch}.
      *
-     * <p>Para calcular el nuevo indice desplazado se realiza la siguiente operacion:
+     * @param encryptedPath la ruta del archivo encriptado, con su indice al lado.
+     * @param engine el motor con el que se encripto el texto.
+     * @param start la posicion en bytes del archivo encriptado donde empieza el rango (incluida).
+     * @param end la posicion donde termina (excluida).
+     * @param output el flujo donde se escribe el texto desencriptado, en UTF-8. No se cierra.
+     * @return {@code true} si el rango se desencripto, o {@code false} si no hay indice o hubo un error.
+     */
+    public boolean decryptBytes(String encryptedPath, CipherEngine engine, long start, long end, OutputStream output) {
+        return decryptRange(encryptedPath, engine, false, start, end, output);
+    }
+
+    /**
+     * Desencripta un rango de lineas o de bytes desde el punto de control anterior del indice.
+     */
+    private boolean decryptRange(String encryptedPath, CipherEngine engine, boolean lines, long from, long to,
+                                 OutputStream output) {
+        if (from < 0 || to < from) {
+            System.err.println("Error: Rango no valido: " + from + "-" + to);
+            return false;
+        }
+        Path path = Paths.get(encryptedPath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            LineIndex index = LineIndex.read(path);
+            int point = lines ? index.beforeLine(from) : index.beforeByte(from);
+            long line = index.lineAt(point);
+            long offset = index.byteAt(point);
+            long position = index.charAt(point);
+            channel.position(offset);
+
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE);
+            CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+            char[] encrypted = new char[BLOCK_SIZE];
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) == -1;
+                bytes.flip();
+                decoder.decode(bytes, chars, eof);
+                if (eof) {
+                    decoder.flush(chars);
+                }
+                bytes.compact();
+                chars.flip();
+                int limit = chars.limit();
+                if (!eof && limit > 0 && Character.isHighSurrogate(chars.get(limit - 1))) {
+                    chars.limit(limit - 1);                         // El par se completa con el bloque siguiente
+                }
+                int count = chars.remaining();
+                chars.get(0, encrypted, 0, count);                  // Los bytes se cuentan sobre el texto encriptado
+                decrypt(chars, engine, position);
+                for (int i = 0; i < count; i++) {
+                    if (lines ? line >= to : offset >= to) {
+                        writer.flush();
+                        return true;
+                    }
+                    int units = 1;
+                    int length;
+                    char c = encrypted[i];
+                    if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(encrypted[i + 1])) {
+                        units = 2;
+                        length = 4;
+                    } else {
+                        length = c < 0x80 || Character.isSurrogate(c) ? 1 : c < 0x800 ? 2 : 3;
+                    }
+                    if (lines ? line >= from : offset >= from) {
+                        writer.write(chars.array(), i, units);
+                    }
+                    if (chars.get(i) == '\n') {
+                        line++;
+                    }
+                    offset += length;
+                    i += units - 1;
+                }
+                position += count;
+                chars.position(count);
+                chars.limit(limit);
+                chars.compact();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error al descifrar el rango: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Crea el motor del cifrado Cesar con el alfabeto de esta clase.
+     *
+     * @param desplazamiento el numero de posiciones que se utilizo al encriptar.
+     * @return el motor de cifrado.
+     */
+    public CipherEngine caesar(int desplazamiento) {
+        int normalizado = Math.floorMod(desplazamiento, caesarEngines.length);
+        CipherEngine engine = caesarEngines[normalizado];
+        if (engine == null) {                                   // Los motores son inmutables: compartirlos es seguro
+            engine = new CaesarEngine(alphabet, normalizado);
+            caesarEngines[normalizado] = engine;
+        }
+        return engine;
+    }
+
+    /**
+     * Calcula el desplazamiento con el que se cifro un archivo, sin necesidad de su archivo de propiedades.
+     * <p>
+     * Utiliza {@link FrequencyAnalyzer}, que compara la frecuencia de las letras del comienzo del archivo con la
+     * del espanol y el ingles para cada desplazamiento posible.
+     * </p>
+     *
+     * @param encryptedPath la ruta del archivo encriptado.
+     * @return el desplazamiento mas probable, o -1 si no se pudo leer el archivo.
+     */
+    public int detectarDesplazamiento(String encryptedPath) {
+        return new FrequencyAnalyzer(alphabet).detectShift(encryptedPath);
+    }
+
+    /**
+     * Desplaza los caracteres del texto segun el desplazamiento especificado.
+     *
+     * <p>Este metodo obtiene de {@link Alphabet#getShiftTable(int)} (a traves de {@link CaesarEngine}) la tabla
+     * de traduccion del desplazamiento (que aqui llega ya negativo) y sustituye cada caracter por su entrada en la
+     * tabla. Si el caracter no pertenece al alfabeto, su entrada es el mismo caracter y se conserva sin cambios.</p>
+     *
+     * <p>Para calcular el nuevo indice desplazado la tabla aplica la siguiente operacion:
      * Ejemplo: Si {@code index} es 0 (para 'a'), {@code desplazamiento} es 3, y el
      * alfabeto tiene 26 letras, se calcula {@code newIndex} de la siguiente manera:
-     * {@code newIndex} = (0 + (-3) + 26) % 26 = 23, que corresponde a 'x'. Finalmente,
-     * se obtiene el nuevo caracter, sin importar si es letra o simbolo, utilizando
-     * {@code alphabet.getCharacter(newIndex, Character.isLowerCase(character))}.</p>
+     * {@code newIndex} = (0 + (-3) + 26) % 26 = 23, que corresponde a 'x'. Igual que con
+     * {@code alphabet.getCharacter(newIndex, Character.isLowerCase(character))}, el resultado
+     * se pasa a minuscula si el caracter original lo era.</p>
      *
      * @param text El texto que se desea desencriptar. Por ejemplo, "def".
      * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
@@ -73,21 +389,11 @@ public class Descifrar {
      *         y el desplazamiento era 3, el resultado sera "abc".
      */
     private String shiftText(String text, int desplazamiento) {
-        StringBuilder result = new StringBuilder();
-        for (char character : text.toCharArray()) {
-            if (alphabet.isLetter(character)) {
-                int index = alphabet.getIndex(character);
-                int newIndex = (index + desplazamiento + alphabet.getAlphabetString().length()) % alphabet.getAlphabetString().length(); // Asegurarse de que el índice sea positivo
-                result.append(alphabet.getCharacter(newIndex, Character.isLowerCase(character)));
-            } else {
-                result.append(character);
-            }
-        }
-        return result.toString();
+        return decrypt(text, caesar(-desplazamiento));      // El motor descifra con getShiftTable(desplazamiento)
     }
 
     /**
-     * Desencripta un archivo utilizando la informacion de un archivo de propiedades.\n
+     * Desencripta un archivo utilizando la informacion de un archivo de propiedades.
      *
      * <p>Este metodo lee el contenido del archivo de propiedades para obtener la ruta del archivo
      * encriptado y el desplazamiento. Luego, desencripta el contenido del archivo encriptado
@@ -101,44 +407,46 @@ public class Descifrar {
      * </pre>
      * <p>Y el archivo {@code encrypted.txt} contiene el texto "def", el metodo desencriptara
      * el texto utilizando un desplazamiento de 3, resultando en "abc", que se guardara en un nuevo archivo
-     * llamado "original.txt".</p>
+     * en la carpeta {@code Files}. El archivo se lee con {@link PropertiesStore#parseLegacy(String)}, que acepta
+     * saltos de linea de cualquier sistema operativo.</p>
      *
      * @param propertiesFilePath La ruta del archivo de propiedades que contiene la informacion
      *                           necesaria para la desencriptacion.
+     * @return {@code true} si se guardo el texto desencriptado, o {@code false} si hubo un error.
      */
-    public void decryptFromProperties(String propertiesFilePath) {
+    public boolean decryptFromProperties(String propertiesFilePath) {
         String propertiesContent = fileHandler.readFromFile(propertiesFilePath);    //leer archivo de propiedades
         if (propertiesContent == null) {
             System.err.println("Error: No se pudo leer el archivo de propiedades.");
-            return;
+            return false;
         }
-
-        String originalFilePath = null;
-        String filePathEncriptado = null;
-        int desplazamiento = 0;
-
-        String[] lineas = propertiesContent.split(System.lineSeparator()); // Procesar el contenido del archivo de propiedades
-        for (String linea : lineas) {
-            if (linea.startsWith("Original File Path: ")) {
-                originalFilePath = linea.substring("Original File Path: ".length());
-            } else if (linea.startsWith("Encrypted File Path: ")) {
-                filePathEncriptado = linea.substring("Encrypted File Path: ".length());
-            } else if (linea.startsWith("Desplazamiento: ")) {
-                desplazamiento = Integer.parseInt(linea.substring("Desplazamiento: ".length()));
-            }
+        PropertiesStore.Entry properties = PropertiesStore.parseLegacy(propertiesContent);
+        if (properties == null) {
+            System.err.println("Error: El archivo de propiedades no es valido: " + propertiesFilePath);
+            return false;
         }
+        return decryptFromProperties(properties);
+    }
 
-        String textoEncriptado = fileHandler.readFromFile(filePathEncriptado);         // Leer el contenido del archivo encriptado
-        if (textoEncriptado == null) {
+    /**
+     * Desencripta el archivo descrito por unas propiedades, por ejemplo las obtenidas de {@link PropertiesStore}.
+     *
+     * @param properties La ruta del archivo encriptado y el desplazamiento con el que se encripto.
+     * @return {@code true} si se guardo el texto desencriptado, o {@code false} si hubo un error.
+     */
+    public boolean decryptFromProperties(PropertiesStore.Entry properties) {
+        // Descifrar el archivo encriptado por bloques y guardar el resultado
+        String filePathEncriptado = properties.getEncryptedPath();
+        String outputPath = fileHandler.generateOutputPath(filePathEncriptado, "DFPp");
+        final int shift = properties.getShift();
+        OperationMetrics metrics = OperationMetrics.start("descifrar-propiedades", filePathEncriptado, alphabet);
+        boolean ok = fileHandler.transformFile(filePathEncriptado, outputPath, buffer -> decrypt(buffer, shift), metrics);
+        OperationMetrics.finish(metrics, ok);
+        if (!ok) {
             System.err.println("Error: No se pudo leer el archivo encriptado.");
-            return;
+            return false;
         }
-
-        String decryptedText = decrypt(textoEncriptado, desplazamiento);
-
-        // Guardar el texto descifrado
-        String outputPath = fileHandler.generateOutputPath(filePathEncriptado, "DFPp");
-        fileHandler.writeToFile(outputPath, decryptedText);
         System.out.println("Texto descifrado guardado en: " + outputPath);
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,320 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La clase {@code EncryptionCache} recuerda que archivos ya se cifraron, para que {@link BatchEncryptor} no vuelva a
+ * cifrar los que no cambiaron.
+ *
+ * <p>La cache registra cada archivo cifrado con la clave {@code (hash del contenido, cifrado)} de la que sale. El hash es
+ * SHA-256 del contenido; para no leer cada archivo en cada ejecucion tambien se guarda, por ruta de entrada, el tamano
+ * y la fecha de modificacion con los que se calculo, y mientras no cambien se reutiliza. Una salida solo se considera
+ * valida si sigue existiendo con el mismo tamano y fecha de modificacion que cuando se escribio.</p>
+ *
+ * <p>Las dos tablas estan ordenadas por ultimo uso y tienen un tamano maximo: al superarlo se descartan las entradas
+ * usadas hace mas tiempo (LRU), y las entradas cuya salida ya no es valida se descartan al consultarlas. Los
+ * archivos cifrados nunca se borran: solo se olvidan.</p>
+ *
+ * <p>La cache se guarda en {@code Properties/cache.db}, un archivo de texto con una linea por entrada en orden de
+ * uso, que se reemplaza de forma atomica con {@link #save()}:</p>
+ * <pre>
+ * H	tamano	modificacion	hash	ruta de entrada
+ * S	hash	cifrado	tamano	modificacion	ruta de salida
+ * </pre>
+ * <p>Los metodos son seguros entre hilos.</p>
+ */
+public class EncryptionCache {
+    private static final String HEADER = "# AlgoritmoApp cache v1";
+    private static final int DEFAULT_MAX_ENTRIES = 100_000;
+    private static final int HASH_BUFFER = 64 * 1024;
+
+    private final Path cachePath;
+    private final Map<String, Stamp> hashes;            // Ruta de entrada -> hash de su contenido
+    private final Map<String, Output> outputs;          // Ruta de salida -> contenido y cifrado de los que sale
+    private final Map<String, String> byContent = new HashMap<>();   // hash + cifrado -> una de sus salidas
+
+    /**
+     * Constructor de la clase {@code EncryptionCache}. Carga {@code Properties/cache.db} si existe.
+     */
+    public EncryptionCache() {
+        this(Paths.get("Properties", "cache.db"), DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor de la clase {@code EncryptionCache} con otro archivo y otro tamano maximo. Carga el archivo si
+     * existe; si no se puede leer, la cache empieza vacia.
+     *
+     * @param cachePath La ruta del archivo de la cache.
+     * @param maxEntries El numero maximo de entradas de cada tabla.
+     */
+    public EncryptionCache(Path cachePath, int maxEntries) {
+        this.cachePath = cachePath;
+        this.hashes = lru(maxEntries);
+        this.outputs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Output> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                byContent.remove(eldest.getValue().content(), eldest.getKey());
+                return true;
+            }
+        };
+        load();
+    }
+
+    /**
+     * Obtiene el hash del contenido de un archivo. Si el archivo tiene el mismo tamano y fecha de modificacion que la
+     * ultima vez, se devuelve el hash guardado sin leerlo.
+     *
+     * @param input El archivo.
+     * @return El hash SHA-256 en hexadecimal.
+     * @throws IOException Si no se puede leer el archivo.
+     */
+    public String hash(Path input) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        String key = input.toAbsolutePath().normalize().toString();
+        synchronized (this) {
+            Stamp stamp = hashes.get(key);
+            if (stamp != null && stamp.size == size && stamp.modified == modified) {
+                return stamp.value;
+            }
+        }
+        String hash = sha256(input);                        // Fuera del bloqueo: es lo que tarda
+        synchronized (this) {
+            hashes.put(key, new Stamp(size, modified, hash));
+        }
+        return hash;
+    }
+
+    /**
+     * Comprueba si una salida ya es el resultado de cifrar un contenido: si se registro con ese contenido y cifrado y
+     * no cambio desde entonces.
+     *
+     * @param output La ruta de la salida.
+     * @param hash El hash del contenido ({@link #hash(Path)}).
+     * @param cipher La descripcion del cifrado, que debe incluir todo lo que cambia el resultado (clave y alfabeto).
+     * @return {@code true} si no hace falta volver a escribir la salida.
+     */
+    public synchronized boolean isCurrent(Path output, String hash, String cipher) {
+        String key = output.toAbsolutePath().normalize().toString();
+        Output recorded = outputs.get(key);
+        if (recorded == null || !recorded.hash.equals(hash) || !recorded.cipher.equals(cipher)) {
+            return false;
+        }
+        if (isValid(key, recorded)) {
+            return true;
+        }
+        remove(key);                                        // La salida cambio o se borro
+        return false;
+    }
+
+    /**
+     * Busca alguna salida valida de un contenido ya cifrado, para copiarla en lugar de volver a cifrarlo.
+     *
+     * @param hash El hash del contenido.
+     * @param cipher La descripcion del cifrado.
+     * @return La ruta de la salida, o {@code null} si no hay ninguna valida.
+     */
+    public synchronized Path find(String hash, String cipher) {
+        String key = byContent.get(hash + "\t" + cipher);
+        if (key == null) {
+            return null;
+        }
+        Output recorded = outputs.get(key);
+        if (recorded != null && isValid(key, recorded)) {
+            return Paths.get(key);
+        }
+        remove(key);
+        return null;
+    }
+
+    /**
+     * Registra la salida de un contenido cifrado, que debe estar ya escrita.
+     *
+     * @param hash El hash del contenido.
+     * @param cipher La descripcion del cifrado.
+     * @param output La ruta de la salida.
+     * @throws IOException Si no se pueden leer los atributos de la salida.
+     */
+    public void put(String hash, String cipher, Path output) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(output, BasicFileAttributes.class);
+        Output recorded = new Output(hash, cipher, attributes.size(), attributes.lastModifiedTime().toMillis());
+        String key = output.toAbsolutePath().normalize().toString();
+        synchronized (this) {
+            remove(key);
+            outputs.put(key, recorded);
+            byContent.put(hash + "\t" + cipher, key);
+        }
+    }
+
+    /**
+     * @return El numero de salidas registradas.
+     */
+    public synchronized int size() {
+        return outputs.size();
+    }
+
+    /**
+     * Guarda la cache, de la entrada usada hace mas tiempo a la mas reciente. Se escribe un archivo temporal que
+     * despues reemplaza al anterior, por lo que una interrupcion nunca deja la cache a medias.
+     *
+     * @return {@code true} si se guardo, o {@code false} si ocurre un error.
+     */
+    public synchronized boolean save() {
+        Path temporary = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+        try {
+            if (cachePath.getParent() != null) {
+                Files.createDirectories(cachePath.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + "\n");
+                for (Map.Entry<String, Stamp> entry : hashes.entrySet()) {
+                    Stamp stamp = entry.getValue();
+                    writer.write("H\t" + stamp.size + "\t" + stamp.modified + "\t" + stamp.value + "\t" + entry.getKey() + "\n");
+                }
+                for (Map.Entry<String, Output> entry : outputs.entrySet()) {
+                    Output output = entry.getValue();
+                    writer.write("S\t" + output.content() + "\t" + output.size + "\t" + output.modified + "\t" + entry.getKey() + "\n");
+                }
+            }
+            Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error al guardar la cache de cifrado: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Carga las entradas del archivo de la cache; las lineas que no se entienden se ignoran.
+     */
+    private void load() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(cachePath, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;                                         // Primera ejecucion
+        } catch (IOException e) {
+            System.err.println("Error al leer la cache de cifrado: " + e.getMessage());
+            return;
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            return;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", 6);
+            try {
+                if (fields[0].equals("H") && fields.length == 5) {
+                    hashes.put(fields[4], new Stamp(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+                } else if (fields[0].equals("S") && fields.length == 6) {
+                    Output output = new Output(fields[1], fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+                    outputs.put(fields[5], output);
+                    byContent.put(output.content(), fields[5]);     // La mas reciente queda al final
+                }
+            } catch (NumberFormatException e) {
+                // Linea danada: se ignora
+            }
+        }
+    }
+
+    private static String sha256(Path input) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);             // Todas las JVM incluyen SHA-256
+        }
+        byte[] buffer = new byte[HASH_BUFFER];
+        try (InputStream in = Files.newInputStream(input)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Comprueba que una salida sigue teniendo el tamano y la fecha de modificacion con los que se registro.
+     */
+    private static boolean isValid(String path, Output recorded) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+            return attributes.size() == recorded.size && attributes.lastModifiedTime().toMillis() == recorded.modified;
+        } catch (IOException e) {
+            return false;                                   // La salida se borro
+        }
+    }
+
+    private void remove(String key) {
+        Output removed = outputs.remove(key);
+        if (removed != null) {
+            byContent.remove(removed.content(), key);
+        }
+    }
+
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {       // En orden de acceso
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Un valor de la cache junto con el tamano y la fecha de modificacion del archivo con el que se obtuvo.
+     */
+    private static final class Stamp {
+        private final long size;
+        private final long modified;
+        private final String value;
+
+        private Stamp(long size, long modified, String value) {
+            this.size = size;
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Una salida registrada: el contenido y el cifrado de los que sale, y su tamano y fecha de modificacion.
+     */
+    private static final class Output {
+        private final String hash;
+        private final String cipher;
+        private final long size;
+        private final long modified;
+
+        private Output(String hash, String cipher, long size, long modified) {
+            this.hash = hash;
+            this.cipher = cipher;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private String content() {
+            return hash + "\t" + cipher;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La clase {@code EncryptionService} es un servicio de larga duracion que cifra y descifra textos en memoria, para
+ * usar el programa desde otras aplicaciones sin pasar por el menu ni por archivos.
+ *
+ * <p>Las peticiones se reciben con {@link #submit(String, boolean, char[])} (dentro del mismo proceso) o por HTTP en
+ * el puerto local indicado a {@link #start(int)}:</p>
+ * <pre>
+ * POST /encrypt?cipher=vigenere:CLAVE   (o ?s=3)   cuerpo: el texto en UTF-8; respuesta: el texto cifrado
+ * POST /decrypt?cipher=...                          cuerpo: el texto cifrado; respuesta: el texto original
+ * GET  /stats                                       contadores y latencias, una linea clave=valor por dato
+ * </pre>
+ *
+ * <p>Cada peticion espera en una cola. Los hilos de trabajo toman de la cola todas las peticiones pendientes (hasta
+ * {@code MAX_BATCH}) y las procesan como un lote ordenado por motor de cifrado, de modo que las peticiones pequenas
+ * que llegan juntas comparten las tablas de traduccion del motor mientras estan en la cache del procesador. Los
+ * motores se crean con {@link ManagerEncryption#crearMotor(String)} y se guardan por especificacion, por lo que las
+ * tablas del {@link Alphabet} se construyen una sola vez.</p>
+ *
+ * <p>Las peticiones HTTP se atienden en un hilo por conexion que solo espera el resultado; el cifrado lo hacen los
+ * hilos de trabajo, uno por procesador por defecto. Si el resultado no llega en {@code RESPONSE_TIMEOUT_SECONDS}, la
+ * respuesta es 503. {@code GET /stats} muestra el numero de peticiones y lotes, el rendimiento desde el inicio (en
+ * peticiones y en millones de caracteres UTF-16 por segundo) y los percentiles 50 y 99 de la latencia (desde que la
+ * peticion entra en la cola hasta que se cifra) de las ultimas {@code LATENCY_SAMPLES} peticiones. Para probarlo con
+ * carga se usa {@link LoadGenerator}.</p>
+ */
+public class EncryptionService {
+    private static final int MAX_BATCH = 64;                    // Peticiones maximas por lote
+    private static final int QUEUE_CAPACITY = 16 * 1024;        // Peticiones en espera antes de rechazar
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;    // Bytes maximos del cuerpo de una peticion
+    private static final int MAX_ENGINES = 1024;                // Motores guardados por especificacion
+    private static final int LATENCY_SAMPLES = 8192;
+    private static final long RESPONSE_TIMEOUT_SECONDS = 30;   // Espera maxima de una peticion HTTP por su resultado
+
+    private final ManagerEncryption manager;
+    private final int workers;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<String, CipherEngine> engines = new ConcurrentHashMap<>();
+    private final LatencyStats latencies = new LatencyStats(LATENCY_SAMPLES);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running;
+    private long startNanos;
+    private HttpServer server;
+    private ExecutorService httpExecutor;
+
+    /**
+     * Constructor de la clase {@code EncryptionService}.
+     *
+     * @param manager El administrador que crea los motores de cifrado (y define el alfabeto).
+     * @param workers El numero de hilos que procesan los lotes.
+     * @throws IllegalArgumentException Si {@code workers} es menor a 1.
+     */
+    public EncryptionService(ManagerEncryption manager, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("El numero de hilos debe ser al menos 1.");
+        }
+        this.manager = manager;
+        this.workers = workers;
+    }
+
+    /**
+     * Inicia los hilos de trabajo y, si {@code port} no es negativo, el servidor HTTP en {@code localhost}.
+     *
+     * @param port El puerto HTTP (0 para uno libre), o -1 para usar solo {@link #submit(String, boolean, char[])}.
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public synchronized void start(int port) throws IOException {
+        startNanos = System.nanoTime();
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::processBatches, "cifrado-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workerThreads.add(worker);
+        }
+        if (port < 0) {
+            return;
+        }
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");   // Sin Nagle: evita esperas de ~40 ms por respuesta
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/encrypt", exchange -> handleCipher(exchange, true));
+        server.createContext("/decrypt", exchange -> handleCipher(exchange, false));
+        server.createContext("/stats", this::handleStats);
+        httpExecutor = Executors.newCachedThreadPool();             // Un hilo por conexion activa
+        server.setExecutor(httpExecutor);
+        server.start();
+    }
+
+    /**
+     * Detiene el servidor HTTP y los hilos de trabajo. Las peticiones que seguian en la cola fallan.
+     */
+    public synchronized void stop() {
+        running = false;                                            // Antes de vaciar la cola: submit ya no encola
+        if (server != null) {
+            server.stop(0);
+            httpExecutor.shutdownNow();
+            server = null;
+        }
+        for (Thread worker : workerThreads) {
+            worker.interrupt();
+        }
+        workerThreads.clear();
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Request request : pending) {
+            request.result.completeExceptionally(new IllegalStateException("El servicio se detuvo."));
+        }
+    }
+
+    /**
+     * @return El puerto HTTP en el que escucha el servicio, o -1 si no tiene servidor HTTP.
+     */
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    /**
+     * Encola una peticion de cifrado o descifrado. El texto se transforma en el mismo arreglo.
+     *
+     * @param especificacion El cifrado con el formato de {@link ManagerEncryption#crearMotor(String)}.
+     * @param encrypt {@code true} para cifrar, {@code false} para descifrar.
+     * @param text El texto, que se sustituye por el resultado.
+     * @return El resultado, que se completa con el mismo arreglo cuando el lote se procesa, o con una excepcion si
+     *         la cola esta llena o el servicio no esta iniciado.
+     * @throws IllegalArgumentException Si la especificacion no es valida.
+     */
+    public CompletableFuture<char[]> submit(String especificacion, boolean encrypt, char[] text) {
+        Request request = new Request(engine(especificacion), encrypt, text);
+        if (!running) {
+            rejected.incrementAndGet();
+            request.result.completeExceptionally(new IllegalStateException("El servicio se detuvo."));
+        } else if (!queue.offer(request)) {
+            rejected.incrementAndGet();
+            request.result.completeExceptionally(new IllegalStateException("La cola de peticiones esta llena."));
+        } else if (!running && queue.remove(request)) {             // stop() vacio la cola antes de que entrara
+            rejected.incrementAndGet();
+            request.result.completeExceptionally(new IllegalStateException("El servicio se detuvo."));
+        }
+        return request.result;
+    }
+
+    /**
+     * Obtiene las estadisticas del servicio, una linea {@code clave=valor} por dato.
+     *
+     * @return Las estadisticas.
+     */
+    public String getStats() {
+        double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+        long requestCount = requests.get();
+        long batchCount = batches.get();
+        return String.format(Locale.ROOT,
+                "peticiones=%d%nlotes=%d%npeticiones_por_lote=%.2f%nrechazadas=%d%ncaracteres=%d%n"
+                        + "peticiones_por_segundo=%.1f%nmcaracteres_por_segundo=%.3f%np50_us=%.1f%np99_us=%.1f%n",
+                requestCount, batchCount, batchCount == 0 ? 0.0 : (double) requestCount / batchCount, rejected.get(),
+                characters.get(), requestCount / seconds, characters.get() / seconds / 1e6,
+                latencies.percentile(50) / 1e3, latencies.percentile(99) / 1e3);
+    }
+
+    /**
+     * Obtiene el motor de una especificacion, creandolo la primera vez.
+     */
+    private CipherEngine engine(String especificacion) {
+        CipherEngine engine = engines.get(especificacion);
+        if (engine == null) {
+            engine = manager.crearMotor(especificacion);
+            if (engines.size() < MAX_ENGINES) {                     // Evita que claves distintas llenen la memoria
+                engines.putIfAbsent(especificacion, engine);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Bucle de cada hilo de trabajo: espera una peticion, toma las demas pendientes y procesa el lote.
+     */
+    private void processBatches() {
+        List<Request> batch = new ArrayList<>(MAX_BATCH);
+        Comparator<Request> byEngine = Comparator.comparingInt(request -> System.identityHashCode(request.engine));
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                batch.sort(byEngine);                               // Las peticiones del mismo motor, juntas
+                for (Request request : batch) {
+                    process(request);
+                }
+                batches.incrementAndGet();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();                     // El servicio se detuvo
+        }
+    }
+
+    private void process(Request request) {
+        try {
+            char[] text = request.text;
+            if (request.encrypt) {
+                request.engine.encrypt(text, 0, text.length, 0);
+            } else {
+                request.engine.decrypt(text, 0, text.length, 0);
+            }
+            latencies.record(System.nanoTime() - request.enqueuedNanos);
+            requests.incrementAndGet();
+            characters.addAndGet(text.length);
+            request.result.complete(text);
+        } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Atiende {@code POST /encrypt} y {@code POST /decrypt}.
+     */
+    private void handleCipher(HttpExchange exchange, boolean encrypt) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "Use POST.");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String especificacion = query.containsKey("cipher") ? query.get("cipher")
+                    : query.containsKey("s") ? "cesar:" + query.get("s") : null;
+            if (especificacion == null) {
+                send(exchange, 400, "Indique el cifrado (?cipher=tipo:clave) o el desplazamiento (?s=n).");
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_PAYLOAD + 1);
+            if (body.length > MAX_PAYLOAD) {
+                send(exchange, 413, "El texto supera " + MAX_PAYLOAD + " bytes.");
+                return;
+            }
+            CompletableFuture<char[]> result;
+            try {
+                result = submit(especificacion, encrypt, new String(body, StandardCharsets.UTF_8).toCharArray());
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, e.getMessage());
+                return;
+            }
+            try {
+                send(exchange, 200, new String(result.get(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+            } catch (ExecutionException e) {
+                send(exchange, 503, e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                result.cancel(false);                               // El hilo de trabajo descarta el resultado
+                send(exchange, 503, "El resultado no llego en " + RESPONSE_TIMEOUT_SECONDS + " segundos.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "El servicio se detuvo.");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Atiende {@code GET /stats}.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, getStats());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            String[] parts = pair.split("=", 2);
+            query.put(URLDecoder.decode(parts[0], StandardCharsets.UTF_8),
+                    parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "");
+        }
+        return query;
+    }
+
+    /**
+     * Una peticion en la cola.
+     */
+    private static final class Request {
+        private final CipherEngine engine;
+        private final boolean encrypt;
+        private final char[] text;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<char[]> result = new CompletableFuture<>();
+
+        private Request(CipherEngine engine, boolean encrypt, char[] text) {
+            this.engine = engine;
+            this.encrypt = encrypt;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Guarda las ultimas latencias en un arreglo circular; los percentiles se calculan ordenando una copia, solo
+     * cuando se piden las estadisticas.
+     */
+    static final class LatencyStats {
+        private final long[] samples;
+        private long count;
+
+        LatencyStats(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % samples.length)] = nanos;
+        }
+
+        /**
+         * @param percentile El percentil, entre 0 y 100.
+         * @return La latencia de ese percentil en nanosegundos, o 0 si no hay muestras.
+         */
+        double percentile(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * La clase {@code FrequencyAnalyzer} recupera el desplazamiento con el que se cifro un texto sin conocer su archivo
+ * de propiedades, usando analisis de frecuencias.
+ *
+ * <p>Se cuenta una sola vez cuantas veces aparece cada caracter del alfabeto en el texto cifrado (solo en los
+ * primeros {@code SAMPLE_SIZE} caracteres, para que el tiempo no dependa del tamano del archivo). Para cada
+ * desplazamiento candidato no se descifra el texto: se traslada el histograma, descifrando cada caracter distinto
+ * una vez y sumando su cuenta a la categoria del caracter descifrado (una letra sin distinguir mayusculas, el
+ * espacio u otro). Cada resultado se compara con la frecuencia esperada en espanol y en ingles mediante
+ * chi-cuadrado, y se elige el desplazamiento con el valor mas bajo.</p>
+ *
+ * <p>Como {@link Alphabet#getCharacter(int, boolean)} pasa a minuscula el resultado cuando el caracter original lo
+ * era, con desplazamientos grandes el cifrado no es reversible y el desplazamiento elegido puede no ser el original:
+ * es el que produce el texto descifrado mas parecido al idioma, que en esos casos es mas legible que el obtenido con
+ * el desplazamiento original.</p>
+ */
+public class FrequencyAnalyzer {
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final String LETTERS = "abcdefghijklmnñopqrstuvwxyz";
+    private static final int SPACE = LETTERS.length();
+    private static final int OTHER = SPACE + 1;
+
+    private static final double LETTER_SHARE = 0.80;    // Proporcion aproximada de letras en un texto
+    private static final double SPACE_SHARE = 0.17;     // Proporcion aproximada de espacios
+    private static final double OTHER_SHARE = 0.03;     // Signos, numeros y caracteres fuera del alfabeto
+    private static final double MIN_EXPECTED = 0.0001;  // Evita dividir entre cero con letras que casi no aparecen
+
+    /** Frecuencia de cada letra de {@code LETTERS} en espanol, en porcentaje. */
+    private static final double[] SPANISH = {
+            12.53, 1.42, 4.68, 5.86, 13.68, 0.69, 1.01, 0.70, 6.25, 0.44, 0.02, 4.97, 3.15, 6.71, 0.31,
+            8.68, 2.51, 0.88, 6.87, 7.98, 4.63, 3.93, 0.90, 0.01, 0.22, 0.90, 0.52};
+    /** Frecuencia de cada letra de {@code LETTERS} en ingles, en porcentaje. */
+    private static final double[] ENGLISH = {
+            8.17, 1.49, 2.78, 4.25, 12.70, 2.23, 2.02, 6.09, 6.97, 0.15, 0.77, 4.03, 2.41, 6.75, 0.00,
+            7.51, 1.93, 0.10, 5.99, 6.33, 9.06, 2.76, 0.98, 2.36, 0.15, 1.97, 0.07};
+
+    private final Alphabet alphabet;
+
+    /**
+     * Constructor de la clase {@code FrequencyAnalyzer}.
+     *
+     * @param alphabet El alfabeto con el que se cifro el texto.
+     */
+    public FrequencyAnalyzer(Alphabet alphabet) {
+        this.alphabet = alphabet;
+    }
+
+    /**
+     * Calcula el desplazamiento mas probable de un archivo cifrado leyendo solo su comienzo.
+     *
+     * @param encryptedPath La ruta del archivo cifrado (UTF-8).
+     * @return El desplazamiento en el rango {@code [0, alphabet.size())}, o -1 si no se pudo leer el archivo.
+     */
+    public int detectShift(String encryptedPath) {
+        char[] sample = new char[SAMPLE_SIZE];
+        int length = 0;
+        try (Reader reader = new InputStreamReader(new FileInputStream(encryptedPath), StandardCharsets.UTF_8)) {
+            int read;
+            while (length < sample.length && (read = reader.read(sample, length, sample.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            System.err.println("Error al leer el archivo: " + e.getMessage());
+            return -1;
+        }
+        return detectShift(sample, length);
+    }
+
+    /**
+     * Calcula el desplazamiento mas probable de un texto cifrado.
+     *
+     * @param text El texto cifrado.
+     * @param length El numero de caracteres de {@code text} que se analizan.
+     * @return El desplazamiento en el rango {@code [0, alphabet.size())}.
+     */
+    public int detectShift(char[] text, int length) {
+        if (length == 0) {
+            return 0;                                       // Sin texto no hay nada que analizar
+        }
+        int size = alphabet.size();
+        int[] counts = new int[size];                       // Histograma del texto cifrado, por indice del alfabeto
+        int outside = 0;
+        int total = 0;
+        for (int i = 0; i < length; ) {
+            int codePoint = Character.codePointAt(text, i, length);
+            i += Character.charCount(codePoint);
+            int index = alphabet.getIndex(codePoint);
+            if (index >= 0) {
+                counts[index]++;
+            } else {
+                outside++;                                  // No cambia al descifrar
+            }
+            total++;
+        }
+
+        int bestShift = 0;
+        double bestScore = Double.MAX_VALUE;
+        for (int shift = 0; shift < size; shift++) {
+            double[] observed = new double[OTHER + 1];
+            observed[OTHER] = outside;
+            for (int i = 0; i < size; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                int character = alphabet.getCodePoint(i, false);
+                int plain = alphabet.getCodePoint(Math.floorMod(i - shift, size), Character.isLowerCase(character));
+                observed[category(plain)] += counts[i];
+            }
+            double score = Math.min(chiSquared(observed, total, SPANISH), chiSquared(observed, total, ENGLISH));
+            if (score < bestScore) {
+                bestScore = score;
+                bestShift = shift;
+            }
+        }
+        return bestShift;
+    }
+
+    /**
+     * Obtiene la categoria de un caracter descifrado: la posicion de la letra en {@code LETTERS}, {@code SPACE} u
+     * {@code OTHER}.
+     */
+    private static int category(int character) {
+        if (character == ' ') {
+            return SPACE;
+        }
+        int letter = LETTERS.indexOf(Character.toLowerCase(character));
+        return letter >= 0 ? letter : OTHER;
+    }
+
+    /**
+     * Calcula el estadistico chi-cuadrado entre las cuentas observadas y las esperadas para un idioma.
+     *
+     * @param observed Las cuentas por categoria.
+     * @param total El numero total de caracteres.
+     * @param letterFrequencies La frecuencia de cada letra del idioma, en porcentaje.
+     * @return El valor de chi-cuadrado; cuanto menor, mas se parece el texto al idioma.
+     */
+    private static double chiSquared(double[] observed, int total, double[] letterFrequencies) {
+        double score = 0;
+        for (int i = 0; i <= OTHER; i++) {
+            double share;
+            if (i == SPACE) {
+                share = SPACE_SHARE;
+            } else if (i == OTHER) {
+                share = OTHER_SHARE;
+            } else {
+                share = LETTER_SHARE * letterFrequencies[i] / 100;
+            }
+            double expected = Math.max(share, MIN_EXPECTED) * total;
+            double difference = observed[i] - expected;
+            score += difference * difference / expected;
+        }
+        return score;
+    }
+}
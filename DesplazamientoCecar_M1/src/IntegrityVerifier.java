@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * La clase {@code IntegrityVerifier} comprueba que archivos cifrados siguen descifrandose en su original, sin escribir
+ * nunca el texto descifrado en disco.
+ *
+ * <p>Cada archivo cifrado se descifra por bloques, como en {@link ManagerEncryption#descifrarFlujo}, pero en lugar de
+ * escribir el resultado se compara a medida que se produce con los bytes del original, que se leen a la vez: un solo
+ * recorrido de los dos archivos y memoria constante. De cada lado se calcula el tamano y la suma CRC32C, y se anota
+ * el primer byte distinto. Los archivos se verifican en paralelo y el informe se muestra en el orden de entrada:</p>
+ * <pre>
+ * OK         Files/eC_texto_...txt
+ * DISTINTO   Files/eC_otro_...txt: primer byte distinto en 120 (original 609 bytes crc32c 1a2b3c4d, descifrado 611 bytes crc32c 5e6f7a8b)
+ * </pre>
+ * <p>Un archivo cifrado puede ser tambien un {@link CompressedContainer}, que se descifra con el cifrado de su
+ * cabecera.</p>
+ */
+public class IntegrityVerifier {
+    private static final String MANIFEST_HEADER = "Original File Path\tEncrypted File Path\tDesplazamiento";
+
+    /**
+     * Un archivo que se va a verificar: el original, el cifrado y el cifrado con el que se cifro.
+     */
+    public static final class Task {
+        private final String originalPath;
+        private final String encryptedPath;
+        private final String cipher;
+
+        /**
+         * @param originalPath La ruta del archivo original.
+         * @param encryptedPath La ruta del archivo cifrado.
+         * @param cipher La descripcion del motor (ver {@link ManagerEncryption#crearMotor(String)}), o {@code null}
+         *               si el archivo cifrado es un {@link CompressedContainer}.
+         */
+        public Task(String originalPath, String encryptedPath, String cipher) {
+            this.originalPath = originalPath;
+            this.encryptedPath = encryptedPath;
+            this.cipher = cipher;
+        }
+
+        public String getOriginalPath() {
+            return originalPath;
+        }
+
+        public String getEncryptedPath() {
+            return encryptedPath;
+        }
+
+        public String getCipher() {
+            return cipher;
+        }
+    }
+
+    private final ManagerEncryption manager;
+    private final int threads;
+
+    /**
+     * Constructor de la clase {@code IntegrityVerifier}.
+     *
+     * @param manager El gestor con el que se descifran los archivos, con el mismo alfabeto con el que se cifraron.
+     * @param threads El numero de archivos que se verifican a la vez.
+     */
+    public IntegrityVerifier(ManagerEncryption manager, int threads) {
+        this.manager = manager;
+        this.threads = threads;
+    }
+
+    /**
+     * Lee los archivos de un manifiesto de {@link BatchEncryptor}.
+     *
+     * @param manifestPath La ruta del manifiesto.
+     * @return Los archivos del manifiesto, o {@code null} si no se puede leer o no es un manifiesto.
+     */
+    public static List<Task> readManifest(String manifestPath) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(manifestPath), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Error al leer el manifiesto: " + e.getMessage());
+            return null;
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(MANIFEST_HEADER)) {
+            return null;
+        }
+        List<Task> tasks = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            if (fields.length == 3) {
+                tasks.add(new Task(fields[0], fields[1], "cesar:" + fields[2].trim()));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Verifica los archivos y muestra una linea por archivo y un resumen.
+     *
+     * @param tasks Los archivos que se verifican.
+     * @return El numero de archivos que no se descifran en su original o no se pudieron verificar.
+     */
+    public int verify(List<Task> tasks) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> reports = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            reports.add(executor.submit(() -> verify(task)));
+        }
+        int failed = 0;
+        try {
+            for (Future<String> report : reports) {
+                String line = report.get();
+                if (!line.startsWith("OK")) {
+                    failed++;
+                }
+                System.out.println(line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return tasks.size();
+        } catch (ExecutionException e) {
+            System.err.println("Error al verificar: " + e.getCause());
+            return tasks.size();
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.printf("Verificados: %d, coinciden: %d, distintos o con errores: %d%n", tasks.size(),
+                tasks.size() - failed, failed);
+        return failed;
+    }
+
+    /**
+     * Verifica un archivo.
+     *
+     * @return La linea del informe.
+     */
+    private String verify(Task task) {
+        try (InputStream original = new BufferedInputStream(new FileInputStream(task.originalPath));
+             InputStream encrypted = new FileInputStream(task.encryptedPath)) {
+            ComparingOutputStream comparison = new ComparingOutputStream(original);
+            boolean ok = task.cipher == null ? manager.descifrarFlujoComprimido(encrypted, comparison)
+                    : manager.descifrarFlujo(encrypted, comparison, manager.crearMotor(task.cipher));
+            if (!ok) {
+                return "ERROR      " + task.encryptedPath + ": no se pudo descifrar";
+            }
+            comparison.finish();
+            return comparison.matches() ? "OK         " + task.encryptedPath
+                    : "DISTINTO   " + task.encryptedPath + ": " + comparison;
+        } catch (IOException | IllegalArgumentException e) {
+            return "ERROR      " + task.encryptedPath + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Recibe el texto descifrado y lo compara con el original, leyendo de este tantos bytes como se escriben.
+     */
+    private static final class ComparingOutputStream extends OutputStream {
+        private final InputStream original;
+        private final CRC32C originalChecksum = new CRC32C();
+        private final CRC32C decryptedChecksum = new CRC32C();
+        private byte[] scratch = new byte[8192];
+        private long originalLength;
+        private long decryptedLength;
+        private long firstDifference = -1;
+
+        private ComparingOutputStream(InputStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            int read = original.readNBytes(scratch, 0, length);
+            originalChecksum.update(scratch, 0, read);
+            decryptedChecksum.update(bytes, offset, length);
+            if (firstDifference < 0) {
+                int common = Math.min(read, length);
+                int mismatch = Arrays.mismatch(scratch, 0, common, bytes, offset, offset + common);
+                if (mismatch >= 0) {
+                    firstDifference = decryptedLength + mismatch;
+                } else if (read < length) {
+                    firstDifference = decryptedLength + read;     // El original termina antes
+                }
+            }
+            originalLength += read;
+            decryptedLength += length;
+        }
+
+        /**
+         * Lee el resto del original, si el texto descifrado era mas corto.
+         */
+        private void finish() throws IOException {
+            int read;
+            while ((read = original.read(scratch)) != -1) {
+                if (firstDifference < 0 && read > 0) {
+                    firstDifference = originalLength;
+                }
+                originalChecksum.update(scratch, 0, read);
+                originalLength += read;
+            }
+        }
+
+        private boolean matches() {
+            return firstDifference < 0 && originalLength == decryptedLength
+                    && originalChecksum.getValue() == decryptedChecksum.getValue();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "primer byte distinto en %d (original %d bytes crc32c %08x, descifrado %d bytes crc32c %08x)",
+                    firstDifference, originalLength, originalChecksum.getValue(), decryptedLength,
+                    decryptedChecksum.getValue());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * La clase {@code KeyedAlphabetEngine} sustituye cada caracter del {@link Alphabet} por el caracter en la misma
+ * posicion de un alfabeto permutado con una palabra clave.
+ *
+ * <p>El alfabeto permutado empieza con los caracteres de la palabra clave (sin repetir) y sigue con el resto del
+ * alfabeto en su orden original. La traduccion es exacta (sin la regla de minusculas del cifrado Cesar).</p>
+ * <pre>EJEMPLO: con la clave "CLAVE" el alfabeto permutado empieza por "CLAVEBDFGH...", de modo que 'A' se cifra
+ * como 'C', 'B' como 'L' y 'F' como 'B'.</pre>
+ */
+public class KeyedAlphabetEngine extends TableCipherEngine {
+
+    /**
+     * Constructor de la clase {@code KeyedAlphabetEngine}.
+     *
+     * @param alphabet El alfabeto que se permuta.
+     * @param keyword La palabra clave; todos sus caracteres deben pertenecer al alfabeto.
+     * @throws IllegalArgumentException Si la palabra clave esta vacia o tiene caracteres fuera del alfabeto.
+     */
+    public KeyedAlphabetEngine(Alphabet alphabet, String keyword) {
+        super(alphabet, mapping(alphabet, keyword));
+    }
+
+    private static IntUnaryOperator mapping(Alphabet alphabet, String keyword) {
+        if (keyword == null || keyword.isEmpty()) {
+            throw new IllegalArgumentException("La palabra clave no puede estar vacia.");
+        }
+        int length = alphabet.size();
+        int[] keyed = new int[length];                      // keyed[i]: indice del caracter en la posicion i
+        boolean[] used = new boolean[length];
+        int size = 0;
+        for (int codePoint : keyword.codePoints().toArray()) {
+            int index = alphabet.getIndex(codePoint);
+            if (index < 0) {
+                throw new IllegalArgumentException("El caracter '" + Character.toString(codePoint) + "' de la clave no esta en el alfabeto.");
+            }
+            if (!used[index]) {
+                used[index] = true;
+                keyed[size++] = index;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (!used[i]) {
+                keyed[size++] = i;
+            }
+        }
+        return i -> keyed[i];
+    }
+}
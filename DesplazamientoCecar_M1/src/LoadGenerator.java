@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La clase {@code LoadGenerator} genera carga contra un {@link EncryptionService} por HTTP para medir su rendimiento
+ * y su latencia.
+ *
+ * <p>Cada uno de los {@code --concurrency} clientes envia peticiones de cifrado una tras otra, con textos
+ * aleatorios de {@code --size} caracteres del alfabeto, hasta completar {@code --requests} peticiones en total.
+ * Antes de medir se comprueba que el servicio cifra y descifra igual que {@link Cifrar} y {@link Descifrar} con el
+ * alfabeto predeterminado. Al terminar se muestran las peticiones por segundo, los megabytes por segundo y los
+ * percentiles 50 y 99 de la latencia vista por el cliente, seguidos de las estadisticas del servicio
+ * ({@code GET /stats}). Se ejecuta con:</p>
+ * <pre>java LoadGenerator [--url http://localhost:8080] [--requests 20000] [--concurrency 16] [--size 256] [--cipher cesar:3]</pre>
+ * <p>Sin {@code --url} se inicia un servicio dentro del mismo proceso, en un puerto libre. El programa termina con
+ * codigo 1 si alguna peticion falla.</p>
+ */
+public class LoadGenerator {
+    private static final String CARACTERES = Alphabet.getDefault().getAlphabetString() + "\n";
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int requests = 20000;
+        int concurrency = 16;
+        int size = 256;
+        String cipher = "cesar:3";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": url = args[++i]; break;
+                case "--requests": requests = Integer.parseInt(args[++i]); break;
+                case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--cipher": cipher = args[++i]; break;
+                default:
+                    System.err.println("Opcion desconocida: " + args[i]);
+                    System.err.println("Uso: java LoadGenerator [--url http://localhost:8080] [--requests n] "
+                            + "[--concurrency n] [--size caracteres] [--cipher tipo:clave]");
+                    System.exit(2);
+            }
+        }
+
+        EncryptionService embedded = null;
+        if (url == null) {
+            embedded = new EncryptionService(new ManagerEncryption(), Runtime.getRuntime().availableProcessors());
+            embedded.start(0);
+            url = "http://localhost:" + embedded.getPort();
+            System.out.println("Servicio iniciado en " + url);
+        }
+        try {
+            System.exit(new LoadGenerator(url, cipher).run(requests, concurrency, size) ? 0 : 1);
+        } finally {
+            if (embedded != null) {
+                embedded.stop();
+            }
+        }
+    }
+
+    private final String url;
+    private final String query;
+    private final HttpClient client;
+    private final CipherEngine motor;
+
+    private LoadGenerator(String url, String cipher) {
+        this.url = url;
+        this.motor = new ManagerEncryption().crearMotor(cipher);   // Para comprobar las respuestas
+        this.query = "?cipher=" + URLEncoder.encode(cipher, StandardCharsets.UTF_8);
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    /**
+     * Ejecuta la prueba de carga y muestra los resultados.
+     *
+     * @return {@code true} si todas las peticiones tuvieron exito.
+     */
+    private boolean run(int requests, int concurrency, int size) throws Exception {
+        String muestra = texto(new Random(7), size);
+        String cifrado = post("/encrypt", muestra);
+        if (!cifrado.equals(new Cifrar().encrypt(muestra, motor))
+                || !post("/decrypt", cifrado).equals(new Descifrar().decrypt(cifrado, motor))) {
+            System.err.println("Error: el servicio no cifra igual que Cifrar y Descifrar.");
+            return false;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            Random random = new Random(c);
+            results.add(clients.submit(() -> {
+                String payload = texto(random, size);
+                long[] latencies = new long[requests];
+                int count = 0;
+                while (next.getAndIncrement() < requests) {
+                    long sent = System.nanoTime();
+                    try {
+                        if (post("/encrypt", payload).length() != payload.length()) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[count++] = System.nanoTime() - sent;
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+        long[] all = new long[0];
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + latencies.length);
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        clients.shutdown();
+        Arrays.sort(all);
+
+        System.out.printf(Locale.ROOT, "peticiones %d en %.2f s: %.0f peticiones/s, %.2f MB/s%n", all.length, seconds,
+                all.length / seconds, (double) all.length * size / seconds / (1024 * 1024));
+        System.out.printf(Locale.ROOT, "latencia del cliente: p50 %.1f us, p99 %.1f us%n",
+                percentile(all, 50) / 1e3, percentile(all, 99) / 1e3);
+        System.out.println("fallidas " + failures.get());
+        System.out.println("estadisticas del servicio:");
+        System.out.print(client.send(HttpRequest.newBuilder(URI.create(url + "/stats")).build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)).body());
+        return failures.get() == 0;
+    }
+
+    private String post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + path + query))
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private static String texto(Random random, int size) {
+        StringBuilder texto = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            texto.append(CARACTERES.charAt(random.nextInt(CARACTERES.length())));
+        }
+        return texto.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
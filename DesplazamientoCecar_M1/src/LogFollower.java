@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La clase {@code LogFollower} sigue un archivo que crece, como el log de una aplicacion, y cifra solo lo que se le
+ * va anadiendo en un archivo de salida que tambien crece, como {@code tail -f}.
+ *
+ * <p>La carpeta del archivo se vigila con un {@link WatchService}: cuando cambia, se espera una cuarta parte de la
+ * latencia maxima para juntar las escrituras pequenas que llegan seguidas y se cifra todo lo nuevo de una vez, con
+ * una sola escritura en la salida. Si el sistema no avisa de un cambio, el archivo se revisa igualmente cada
+ * latencia maxima, de modo que ningun byte tarda mas que eso en aparecer cifrado.</p>
+ *
+ * <p>La salida es un unico texto cifrado continuo, que se descifra como cualquier otro archivo, incluidos los
+ * cifrados cuya clave depende de la posicion del caracter. El seguimiento sobrevive a la rotacion del log: si el
+ * archivo se renombra y se crea otro con el mismo nombre, se termina de cifrar el anterior y se sigue con el nuevo
+ * desde el principio; si se trunca, se vuelve a leer desde el principio. Tras cada escritura se guarda junto a la
+ * salida, con la extension {@link #STATE_EXTENSION}, hasta donde se cifro:</p>
+ * <pre>
+ * archivo	bytesLeidos	caracteresCifrados	bytesSalida
+ * </pre>
+ * <p>donde {@code archivo} identifica el archivo de entrada (su inodo, por ejemplo). Al volver a empezar se continua
+ * desde ese punto, sin repetir ni perder lineas, y si la salida tiene mas bytes de los guardados (el proceso se
+ * detuvo entre la escritura y el estado) se recorta.</p>
+ */
+public class LogFollower {
+    /**
+     * La extension que se anade a la ruta de la salida para obtener la de su estado.
+     */
+    public static final String STATE_EXTENSION = ".pos";
+
+    private static final int CHUNK_SIZE = 64 * 1024;       // Bytes por lectura
+
+    private final Cifrar cipher;
+    private final long maxLatencyMillis;
+    private volatile boolean stopped;
+    private long batches;
+    private long bytesRead;
+
+    /**
+     * Constructor de la clase {@code LogFollower}.
+     *
+     * @param cipher El cifrador, con el alfabeto del cifrado.
+     * @param maxLatencyMillis El tiempo maximo en milisegundos entre que se escribe una linea en la entrada y aparece
+     *                         cifrada en la salida, sin contar lo que tarda en cifrarse.
+     */
+    public LogFollower(Cifrar cipher, long maxLatencyMillis) {
+        this.cipher = cipher;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Pide que termine el seguimiento; {@link #follow} vuelve despues de cifrar y guardar lo que ya leyo.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return El numero de escrituras hechas en la salida.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return El numero de bytes de la entrada cifrados.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Sigue un archivo hasta que se llama a {@link #stop()} o se interrumpe el hilo.
+     *
+     * @param inputPath La ruta del archivo que se sigue. Si aun no existe, se espera a que se cree.
+     * @param outputPath La ruta de la salida cifrada, que se continua si ya tiene un estado guardado.
+     * @param engine El motor de cifrado, que debe ser el mismo en cada ejecucion sobre la misma salida.
+     * @return {@code true} si el seguimiento termino sin errores, o {@code false} si ocurre un error.
+     */
+    public boolean follow(String inputPath, String outputPath, CipherEngine engine) {
+        Path input = Paths.get(inputPath).toAbsolutePath();
+        Path output = Paths.get(outputPath);
+        Path directory = input.getParent();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService();
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            Follow follow = new Follow(input, output, out, engine);
+            try {
+                if (!follow.resume()) {
+                    return false;
+                }
+                while (!stopped && !Thread.currentThread().isInterrupted()) {
+                    follow.pump();
+                    WatchKey key = watcher.poll(maxLatencyMillis, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                        Thread.sleep(maxLatencyMillis / 4); // Junta las escrituras que llegan seguidas
+                    }
+                }
+                follow.pump();
+            } finally {
+                follow.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error al seguir el archivo: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * El estado de un seguimiento: el archivo de entrada abierto, hasta donde se leyo y lo escrito en la salida.
+     */
+    private final class Follow {
+        private final Path input;
+        private final Path state;
+        private final FileChannel output;
+        private final CipherEngine engine;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        private final ByteBuffer encoded = ByteBuffer.allocate(3 * CHUNK_SIZE);
+        private FileChannel channel;
+        private String fileKey;
+        private long readPosition;                          // Incluye los bytes de una secuencia UTF-8 aun incompleta
+        private long charPosition;
+        private long outputSize;
+
+        private Follow(Path input, Path output, FileChannel channel, CipherEngine engine) {
+            this.input = input;
+            this.state = output.resolveSibling(output.getFileName() + STATE_EXTENSION);
+            this.output = channel;
+            this.engine = engine;
+        }
+
+        /**
+         * Lee el estado guardado, si lo hay, y abre la entrada en el punto donde se quedo.
+         *
+         * @return {@code false} si la salida no corresponde al estado guardado.
+         */
+        private boolean resume() throws IOException {
+            String savedKey = null;
+            long savedPosition = 0;
+            if (Files.exists(state)) {
+                String[] fields = Files.readString(state, StandardCharsets.UTF_8).trim().split("\t");
+                if (fields.length != 4) {
+                    System.err.println("Error: El estado del seguimiento no es valido: " + state);
+                    return false;
+                }
+                savedKey = fields[0];
+                savedPosition = Long.parseLong(fields[1]);
+                charPosition = Long.parseLong(fields[2]);
+                outputSize = Long.parseLong(fields[3]);
+                if (output.size() < outputSize) {
+                    System.err.println("Error: La salida es mas corta que su estado guardado: " + state);
+                    return false;
+                }
+                output.truncate(outputSize);                // Lo escrito despues de guardar el estado se repite
+            } else if (output.size() > 0) {
+                System.err.println("Error: La salida ya existe y no tiene un estado de seguimiento (" + state + ").");
+                return false;
+            }
+            if (open() && fileKey.equals(savedKey) && channel.size() >= savedPosition) {
+                readPosition = savedPosition;               // El mismo archivo: se continua donde se quedo
+            }
+            return true;
+        }
+
+        /**
+         * Cifra lo que se anadio a la entrada desde la ultima vez, teniendo en cuenta la rotacion y el truncado.
+         */
+        private void pump() throws IOException {
+            if (channel == null && !open()) {
+                return;                                     // La entrada aun no existe
+            }
+            long before = outputSize;
+            if (channel.size() < readPosition) {            // Truncado: el log empieza de nuevo
+                readPosition = 0;
+                bytes.clear();
+                decoder.reset();
+            }
+            drain();
+            String current = currentKey();
+            if (current != null && !current.equals(fileKey)) {   // Rotado: se termina el anterior y se abre el nuevo
+                drain();
+                finish();
+                close();
+                open();
+                drain();
+            }
+            if (outputSize != before) {
+                batches++;
+                saveState();
+            }
+        }
+
+        /**
+         * Lee y cifra la entrada hasta su final actual.
+         */
+        private void drain() throws IOException {
+            int read;
+            while ((read = channel.read(bytes, readPosition)) > 0) {
+                readPosition += read;
+                bytesRead += read;
+                bytes.flip();
+                chars.clear();
+                decoder.decode(bytes, chars, false);
+                bytes.compact();                            // Una secuencia partida se completa en la lectura siguiente
+                write();
+            }
+        }
+
+        /**
+         * Cifra lo que queda de una secuencia incompleta al final de un archivo rotado.
+         */
+        private void finish() throws IOException {
+            bytes.flip();
+            chars.clear();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            bytes.clear();
+            decoder.reset();
+            write();
+        }
+
+        /**
+         * Cifra los caracteres decodificados y los anade a la salida en una sola escritura.
+         */
+        private void write() throws IOException {
+            chars.flip();
+            if (!chars.hasRemaining()) {
+                return;
+            }
+            cipher.encrypt(chars, engine, charPosition);
+            charPosition += chars.remaining();
+            encoded.clear();
+            encoder.reset();
+            encoder.encode(chars, encoded, true);
+            encoder.flush(encoded);
+            encoded.flip();
+            while (encoded.hasRemaining()) {
+                outputSize += output.write(encoded, outputSize);
+            }
+        }
+
+        private boolean open() throws IOException {
+            try {
+                channel = FileChannel.open(input, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            fileKey = currentKey();
+            readPosition = 0;
+            return fileKey != null;
+        }
+
+        private void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        /**
+         * Identifica el archivo que hay ahora en la ruta de entrada, o {@code null} si no hay ninguno.
+         */
+        private String currentKey() throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+                Object key = attributes.fileKey();
+                return String.valueOf(key != null ? key : attributes.creationTime());
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Guarda hasta donde se cifro, sin contar una secuencia UTF-8 incompleta, que se vuelve a leer.
+         */
+        private void saveState() throws IOException {
+            Path temporary = MyFileHandler.temporaryPath(state);
+            try {
+                Files.write(temporary, List.of(fileKey + "\t" + (readPosition - bytes.position()) + "\t"
+                        + charPosition + "\t" + outputSize), StandardCharsets.UTF_8);
+                MyFileHandler.moveIntoPlace(temporary, state);
+            } finally {
+                MyFileHandler.deleteQuietly(temporary);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0) {                  // Con argumentos se ejecuta sin menu (ver CommandLine)
+            System.exit(new CommandLine().run(args));
+        }
         Menu menu = new Menu();
         menu.showMenu();
     }
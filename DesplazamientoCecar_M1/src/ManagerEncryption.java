@@ -1,14 +1,24 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 /**
 * La clase ManagerEncryption gestiona el cifrado y descifrado de archivos.
 * Proporcionando metodos para cifrar y descifrar .txt, asi como para guardar
-* propiedades relacionadas con el proceso de cifrado en un archivo de texto.
+* propiedades relacionadas con el proceso de cifrado en un {@link PropertiesStore}.
 * Esta clase utiliza instancias de las clases Cifrar, Descifrar y MyFileHandler
 * para realizar sus operaciones.
 */
@@ -16,90 +26,619 @@ public class ManagerEncryption {
     private final Cifrar cipher;
     private final Descifrar decrypted;
     private final MyFileHandler fileHandler;
+    private final int paralelismo;
+    private MappedFileCipher mappedCipher;              // Creado bajo demanda (ver mappedCipher())
+    private final PipelinedFileCipher pipelinedCipher = new PipelinedFileCipher();
+    private final CompressedContainer container;
+    private PropertiesStore propertiesStore;            // Abierto bajo demanda (ver propertiesStore())
+    private final Alphabet alphabet;
+    private boolean segmentado;
+    private boolean indexado;
 
     /**
      * Constructor de la clase ManagerEncryption, inicializa las instancias de Cifrar,
-     * Descifrar y MyFileHandler.
+     * Descifrar y MyFileHandler. Los archivos mapeados se procesan en un solo hilo.
      */
     public ManagerEncryption() {
-        this.cipher = new Cifrar();
-        this.decrypted = new Descifrar();
+        this(1);
+    }
+    /**
+     * Constructor de la clase ManagerEncryption con un nivel de paralelismo para el cifrado mapeado.
+     *
+     * @param paralelismo El numero de hilos con los que {@link MappedFileCipher} procesa los bloques de un archivo
+     *                    en {@link #manejoDelCifradoMapeado(String, int)} y {@link #manejoDelDecifradoMapeado(String, int)}.
+     */
+    public ManagerEncryption(int paralelismo) {
+        this(paralelismo, Alphabet.getDefault());
+    }
+    /**
+     * Constructor de la clase ManagerEncryption con otro alfabeto, por ejemplo uno cargado con {@link Alphabet#load}.
+     * Todos los cifrados (Cesar y los de {@link #crearMotor(String)}) usan ese alfabeto.
+     *
+     * @param paralelismo El numero de hilos con los que {@link MappedFileCipher} procesa los bloques de un archivo.
+     * @param alphabet El alfabeto de los cifrados.
+     */
+    public ManagerEncryption(int paralelismo, Alphabet alphabet) {
+        this.cipher = new Cifrar(alphabet);
+        this.decrypted = new Descifrar(alphabet);
         this.fileHandler = new MyFileHandler(); // Instancia de tu clase personalizada
+        this.container = new CompressedContainer(fileHandler);
+        if (paralelismo < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1.");
+        }
+        this.paralelismo = paralelismo;
+        this.alphabet = alphabet;
+    }
+    /**
+     * Elige como se procesan por bloques los archivos que no se cifran mapeados: con {@code true} se usa
+     * {@link PipelinedFileCipher}, que solapa la lectura, el desplazamiento y la escritura; con {@code false} (por
+     * defecto), {@link MyFileHandler#transformFile(String, String, java.util.function.Consumer)}. El resultado es el
+     * mismo; la diferencia es el tiempo en archivos grandes.
+     *
+     * @param segmentado {@code true} para solapar la lectura, el desplazamiento y la escritura.
+     */
+    public void setSegmentado(boolean segmentado) {
+        this.segmentado = segmentado;
+    }
+    /**
+     * Elige si al cifrar un archivo se guarda a su lado un {@link LineIndex}, con el que luego se pueden descifrar
+     * solo algunas lineas o bytes con {@link #descifrarRango}. No se aplica a los archivos cifrados mapeados.
+     *
+     * @param indexado {@code true} para guardar el indice de lineas de cada archivo cifrado.
+     */
+    public void setIndexado(boolean indexado) {
+        this.indexado = indexado;
     }
     /**
      * Maneja el proceso de cifrado de un archivo (administrando el proceso).
      * Este metodo lee el contenido de un archivo desde la ruta especificada, cifra el texto
      * utilizando un desplazamiento dado y guarda el texto cifrado en un nuevo archivo.
+     * El archivo se procesa por bloques, por lo que la memoria usada no depende de su tamano.
      *
      * @param inputPath La ruta del archivo que se va a cifrar.
      * @param shift El valor de desplazamiento utilizado para el cifrado.
      * @return La ruta del archivo donde se ha guardado el texto cifrado, o null si hubo un error.
      */
     public String manejoDelCifrado(String inputPath, int shift) {
-        String text = fileHandler.readFromFile(inputPath); // Llama al método de lectura
-        if (text == null) {
+        return manejoDelCifrado(inputPath, cipher.caesar(shift), false);
+    }
+    /**
+     * Maneja el proceso de cifrado de un archivo con cualquier motor de cifrado (ver {@link #crearMotor(String)}).
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param engine El motor de cifrado.
+     * @param mapeado {@code true} para usar {@link MappedFileCipher} (solo cifrados de una tabla).
+     * @return La ruta del archivo donde se ha guardado el texto cifrado, o null si hubo un error.
+     */
+    public String manejoDelCifrado(String inputPath, CipherEngine engine, boolean mapeado) {
+        String outputPath = fileHandler.generateOutputPath(inputPath, "eC");
+        if (!cifrarArchivo(inputPath, outputPath, engine, mapeado)) {
             System.err.println("Error: No se pudo leer el texto del archivo.");
             return null;
         }
-        String encryptedText = cipher.encrypt(text, shift); // Cifra el texto
-        String outputPath = fileHandler.generateOutputPath(inputPath, "eC");
-        fileHandler.writeToFile(outputPath, encryptedText); // Escribe el texto cifrado en un archivo
         System.out.println("Texto cifrado guardado en: " + outputPath);
         return outputPath;
     }
     /**
      * Metodo que maneja el proceso de descifrado de un archivo (administrando el proceso)
-     * Este metodo lee el contenido de un archivo desde la ruta especificada, cifra el texto
-     * utilizando un desplazamiento dado y guarda el texto cifrado en un nuevo archivo.
+     * Este metodo lee el contenido de un archivo desde la ruta especificada, descifra el texto
+     * utilizando un desplazamiento dado y guarda el texto descifrado en un nuevo archivo.
      *
      * @param inputPath La ruta del archivo que se va a descifrar.
      * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @return {@code true} si se guardo el texto descifrado, o {@code false} si hubo un error.
+     */
+    public boolean manejoDelDecifrado(String inputPath, int shift) {
+        return manejoDelDecifrado(inputPath, cipher.caesar(shift), false);
+    }
+    /**
+     * Maneja el proceso de descifrado de un archivo con cualquier motor de cifrado.
+     *
+     * @param inputPath La ruta del archivo que se va a descifrar.
+     * @param engine El motor con el que se cifro el archivo.
+     * @param mapeado {@code true} para usar {@link MappedFileCipher} (solo cifrados de una tabla).
+     * @return {@code true} si se guardo el texto descifrado, o {@code false} si hubo un error.
      */
-    public void manejoDelDecifrado(String inputPath, int shift) {
-        String text = fileHandler.readFromFile(inputPath); // Llama al método de lectura
-        if (text == null) {
+    public boolean manejoDelDecifrado(String inputPath, CipherEngine engine, boolean mapeado) {
+        String outputPath = fileHandler.generateOutputPath(inputPath, "dC");
+        if (!descifrarArchivo(inputPath, outputPath, engine, mapeado)) {
             System.err.println("Error: No se pudo descifrar el texto del archivo." + inputPath);
-            return;
+            return false;
+        }
+        System.out.println("Texto descifrado guardado en: " + outputPath);
+        return true;
+    }
+    /**
+     * Descifra un archivo sin conocer el desplazamiento: primero lo calcula con analisis de frecuencias
+     * ({@link Descifrar#detectarDesplazamiento(String)}) y despues descifra el archivo con el.
+     *
+     * @param inputPath La ruta del archivo que se va a descifrar.
+     * @return El desplazamiento detectado, o -1 si no se pudo leer el archivo o guardar el texto descifrado.
+     */
+    public int manejoDelDescifradoAutomatico(String inputPath) {
+        int shift = decrypted.detectarDesplazamiento(inputPath);
+        if (shift < 0) {
+            System.err.println("Error: No se pudo descifrar el texto del archivo." + inputPath);
+            return -1;
+        }
+        if (!manejoDelDecifrado(inputPath, shift)) {
+            return -1;
+        }
+        System.out.println("Desplazamiento detectado: " + shift);
+        return shift;
+    }
+    /**
+     * Cifra un archivo UTF-8 con {@link MappedFileCipher}, que trabaja sobre los bytes mapeados en memoria sin
+     * decodificarlos. El resultado es el mismo que el de {@link #manejoDelCifrado(String, int)}.
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @return La ruta del archivo donde se ha guardado el texto cifrado, o null si hubo un error.
+     */
+    public String manejoDelCifradoMapeado(String inputPath, int shift) {
+        return manejoDelCifrado(inputPath, cipher.caesar(shift), true);
+    }
+    /**
+     * Descifra un archivo UTF-8 con {@link MappedFileCipher}. El resultado es el mismo que el de
+     * {@link #manejoDelDecifrado(String, int)}.
+     *
+     * @param inputPath La ruta del archivo que se va a descifrar.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     */
+    public void manejoDelDecifradoMapeado(String inputPath, int shift) {
+        manejoDelDecifrado(inputPath, cipher.caesar(shift), true);
+    }
+    /**
+     * Cifra un archivo en la ruta de salida indicada, sin mostrar mensajes.
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param outputPath La ruta donde se guardara el archivo cifrado.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @param mapeado {@code true} para usar {@link MappedFileCipher}, {@code false} para cifrar por bloques de caracteres.
+     * @return {@code true} si el archivo se cifro, o {@code false} si hubo un error.
+     */
+    public boolean cifrarArchivo(String inputPath, String outputPath, int shift, boolean mapeado) {
+        return cifrarArchivo(inputPath, outputPath, cipher.caesar(shift), mapeado);
+    }
+    /**
+     * Cifra un archivo con cualquier motor de cifrado en la ruta de salida indicada, sin mostrar mensajes.
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param outputPath La ruta donde se guardara el archivo cifrado.
+     * @param engine El motor de cifrado.
+     * @param mapeado {@code true} para usar {@link MappedFileCipher} (solo cifrados de una tabla).
+     * @return {@code true} si el archivo se cifro, o {@code false} si hubo un error.
+     */
+    public boolean cifrarArchivo(String inputPath, String outputPath, CipherEngine engine, boolean mapeado) {
+        OperationMetrics metrics = OperationMetrics.start(mapeado ? "cifrar-mapeado" : segmentado ? "cifrar-segmentado"
+                : "cifrar", inputPath, alphabet);
+        if (mapeado) {
+            boolean ok = medirMapeado(mappedCipher().encrypt(inputPath, outputPath, engine), inputPath, metrics);
+            OperationMetrics.finish(metrics, ok);
+            return ok;
+        }
+        LineIndex.Builder index = indexado ? new LineIndex.Builder(cipher.encryptor(engine)) : null;
+        boolean ok = transformarArchivo(inputPath, outputPath, index != null ? index : cipher.encryptor(engine),
+                metrics);                                                                           // Por bloques
+        if (ok && index != null) {
+            try {
+                index.write(Paths.get(outputPath));
+            } catch (IOException e) {
+                System.err.println("Error al guardar el indice de lineas: " + e.getMessage());
+                ok = false;
+            }
+        }
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+    /**
+     * Descifra un archivo en la ruta de salida indicada, sin mostrar mensajes.
+     *
+     * @param inputPath La ruta del archivo que se va a descifrar.
+     * @param outputPath La ruta donde se guardara el archivo descifrado.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @param mapeado {@code true} para usar {@link MappedFileCipher}, {@code false} para descifrar por bloques de caracteres.
+     * @return {@code true} si el archivo se descifro, o {@code false} si hubo un error.
+     */
+    public boolean descifrarArchivo(String inputPath, String outputPath, int shift, boolean mapeado) {
+        return descifrarArchivo(inputPath, outputPath, cipher.caesar(shift), mapeado);
+    }
+    /**
+     * Descifra un archivo con cualquier motor de cifrado en la ruta de salida indicada, sin mostrar mensajes.
+     *
+     * @param inputPath La ruta del archivo que se va a descifrar.
+     * @param outputPath La ruta donde se guardara el archivo descifrado.
+     * @param engine El motor con el que se cifro el archivo.
+     * @param mapeado {@code true} para usar {@link MappedFileCipher} (solo cifrados de una tabla).
+     * @return {@code true} si el archivo se descifro, o {@code false} si hubo un error.
+     */
+    public boolean descifrarArchivo(String inputPath, String outputPath, CipherEngine engine, boolean mapeado) {
+        OperationMetrics metrics = OperationMetrics.start(mapeado ? "descifrar-mapeado" : segmentado ? "descifrar-segmentado"
+                : "descifrar", inputPath, alphabet);
+        boolean ok = mapeado ? medirMapeado(mappedCipher().decrypt(inputPath, outputPath, engine), inputPath, metrics)
+                : transformarArchivo(inputPath, outputPath, decrypted.decryptor(engine), metrics);    // Por bloques
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+    /**
+     * Cifra un flujo de entrada y escribe el resultado en un flujo de salida, por ejemplo para usar el programa en
+     * una tuberia de comandos. Los flujos no se cierran.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo de salida.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @return {@code true} si el flujo se cifro, o {@code false} si hubo un error.
+     */
+    public boolean cifrarFlujo(InputStream input, OutputStream output, int shift) {
+        return cifrarFlujo(input, output, cipher.caesar(shift));
+    }
+    /**
+     * Cifra un flujo de entrada con cualquier motor de cifrado. Los flujos no se cierran.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo de salida.
+     * @param engine El motor de cifrado.
+     * @return {@code true} si el flujo se cifro, o {@code false} si hubo un error.
+     */
+    public boolean cifrarFlujo(InputStream input, OutputStream output, CipherEngine engine) {
+        OperationMetrics metrics = OperationMetrics.start("cifrar", "-", alphabet);
+        boolean ok = fileHandler.transformStream(input, output, cipher.encryptor(engine), metrics);
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+    /**
+     * Descifra un flujo de entrada y escribe el resultado en un flujo de salida. Los flujos no se cierran.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo de salida.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @return {@code true} si el flujo se descifro, o {@code false} si hubo un error.
+     */
+    public boolean descifrarFlujo(InputStream input, OutputStream output, int shift) {
+        return descifrarFlujo(input, output, cipher.caesar(shift));
+    }
+    /**
+     * Descifra un flujo de entrada con cualquier motor de cifrado. Los flujos no se cierran.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo de salida.
+     * @param engine El motor con el que se cifro el flujo.
+     * @return {@code true} si el flujo se descifro, o {@code false} si hubo un error.
+     */
+    public boolean descifrarFlujo(InputStream input, OutputStream output, CipherEngine engine) {
+        OperationMetrics metrics = OperationMetrics.start("descifrar", "-", alphabet);
+        boolean ok = fileHandler.transformStream(input, output, decrypted.decryptor(engine), metrics);
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+    /**
+     * Descifra solo un rango de lineas o de bytes de un archivo cifrado con indice (ver {@link #setIndexado}), con
+     * {@link Descifrar#decryptLines} o {@link Descifrar#decryptBytes}. El flujo de salida no se cierra.
+     *
+     * @param inputPath La ruta del archivo cifrado.
+     * @param output El flujo donde se escribe el texto descifrado.
+     * @param engine El motor con el que se cifro el archivo.
+     * @param lineas {@code true} si el rango es de lineas, {@code false} si es de bytes del archivo cifrado.
+     * @param desde El inicio del rango, contando desde 0 (incluido).
+     * @param hasta El final del rango (excluido).
+     * @return {@code true} si el rango se descifro, o {@code false} si hubo un error.
+     */
+    public boolean descifrarRango(String inputPath, OutputStream output, CipherEngine engine, boolean lineas,
+                                  long desde, long hasta) {
+        OperationMetrics metrics = OperationMetrics.start(lineas ? "descifrar-lineas" : "descifrar-bytes", inputPath,
+                alphabet);
+        boolean ok = lineas ? decrypted.decryptLines(inputPath, engine, desde, hasta, output)
+                : decrypted.decryptBytes(inputPath, engine, desde, hasta, output);
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+    /**
+     * Cifra todos los archivos de texto de un ZIP (o un JAR) en otro ZIP con {@link ZipArchiveCipher}, sin
+     * extraerlos; los que no son texto UTF-8 se copian sin cambios. Con un desplazamiento Cesar se guarda ademas en
+     * {@code Properties/} un manifiesto con la cabecera {@link ZipArchiveCipher#MANIFEST_HEADER} y una linea por
+     * entrada de la forma {@code original.zip!/entrada	cifrado.zip!/entrada	desplazamiento}, en lugar de una
+     * propiedad por archivo. En las entradas copiadas el desplazamiento es {@code -}.
+     *
+     * @param inputPath La ruta del ZIP que se va a cifrar.
+     * @param outputPath La ruta del ZIP cifrado, o {@code null} para guardarlo en {@code Files/}.
+     * @param engine El motor de cifrado.
+     * @param shift El desplazamiento si {@code engine} es el cifrado Cesar, o {@code null} para no guardar manifiesto.
+     * @return La ruta del ZIP cifrado, o null si hubo un error.
+     */
+    public String manejoDelCifradoZip(String inputPath, String outputPath, CipherEngine engine, Integer shift) {
+        String target = outputPath != null ? outputPath : fileHandler.generateOutputPath(inputPath, "eA", ".zip");
+        List<ZipArchiveCipher.Entry> entries = transformarZip(inputPath, target, () -> cipher.encryptor(engine),
+                "cifrar-zip");
+        if (entries == null) {
+            System.err.println("Error: No se pudo cifrar el archivo " + inputPath);
+            return null;
+        }
+        System.out.println("Archivo cifrado guardado en: " + target + " (" + resumenZip(entries) + ")");
+        if (shift != null) {
+            Path manifestPath = Paths.get("Properties").resolve("manifest_" + MyFileHandler.uniqueId() + ".txt");
+            try {
+                Files.createDirectories(manifestPath.getParent());
+                try (BufferedWriter manifest = Files.newBufferedWriter(manifestPath, StandardCharsets.UTF_8)) {
+                    manifest.write(ZipArchiveCipher.MANIFEST_HEADER + "\n");
+                    for (ZipArchiveCipher.Entry entry : entries) {
+                        manifest.write(inputPath + ZipArchiveCipher.ENTRY_SEPARATOR + entry.getName() + "\t" + target
+                                + ZipArchiveCipher.ENTRY_SEPARATOR + entry.getName() + "\t"
+                                + (entry.isTransformed() ? String.valueOf(shift) : "-") + "\n");
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error al escribir el manifiesto: " + e.getMessage());
+                return null;
+            }
+            System.out.println("Manifiesto guardado en: " + manifestPath);
+        }
+        return target;
+    }
+    /**
+     * Descifra todos los archivos de un ZIP cifrado con {@link #manejoDelCifradoZip} en otro ZIP.
+     *
+     * @param inputPath La ruta del ZIP cifrado.
+     * @param outputPath La ruta del ZIP descifrado, o {@code null} para guardarlo en {@code Files/}.
+     * @param engine El motor con el que se cifro.
+     * @return La ruta del ZIP descifrado, o null si hubo un error.
+     */
+    public String manejoDelDescifradoZip(String inputPath, String outputPath, CipherEngine engine) {
+        String target = outputPath != null ? outputPath : fileHandler.generateOutputPath(inputPath, "dA", ".zip");
+        List<ZipArchiveCipher.Entry> entries = transformarZip(inputPath, target, () -> decrypted.decryptor(engine),
+                "descifrar-zip");
+        if (entries == null) {
+            System.err.println("Error: No se pudo descifrar el archivo " + inputPath);
+            return null;
+        }
+        System.out.println("Archivo descifrado guardado en: " + target + " (" + resumenZip(entries) + ")");
+        return target;
+    }
+    /**
+     * Transforma las entradas de un ZIP midiendo la operacion completa.
+     */
+    private List<ZipArchiveCipher.Entry> transformarZip(String inputPath, String outputPath,
+                                                        Supplier<Consumer<CharBuffer>> transforms, String operacion) {
+        OperationMetrics metrics = OperationMetrics.start(operacion, inputPath, alphabet);
+        List<ZipArchiveCipher.Entry> entries = new ZipArchiveCipher().transform(inputPath, outputPath, transforms,
+                metrics);
+        OperationMetrics.finish(metrics, entries != null);
+        return entries;
+    }
+    /**
+     * Resume las entradas de un ZIP transformado, por ejemplo {@code 120 entradas, 3 copiadas sin cambios}.
+     */
+    private static String resumenZip(List<ZipArchiveCipher.Entry> entries) {
+        long copiadas = entries.stream().filter(entry -> !entry.isTransformed()).count();
+        return entries.size() + " entradas"
+                + (copiadas > 0 ? ", " + copiadas + " copiadas sin cambios porque no son texto" : "");
+    }
+    /**
+     * Cifra un archivo y lo guarda como {@link CompressedContainer} en la carpeta {@code Files/}, con la extension
+     * {@link CompressedContainer#EXTENSION}. El contenedor incluye el cifrado, por lo que no hace falta guardar sus
+     * propiedades para descifrarlo.
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param especificacion La descripcion del motor de cifrado (ver {@link #crearMotor(String)}).
+     * @return La ruta del contenedor, o null si hubo un error.
+     */
+    public String manejoDelCifradoComprimido(String inputPath, String especificacion) {
+        String outputPath = fileHandler.generateOutputPath(inputPath, "eZ", CompressedContainer.EXTENSION);
+        if (!procesarArchivo(inputPath, outputPath, (in, out) -> cifrarFlujoComprimido(in, out, especificacion))) {
+            System.err.println("Error: No se pudo cifrar el archivo " + inputPath);
+            return null;
+        }
+        System.out.println("Contenedor cifrado guardado en: " + outputPath);
+        return outputPath;
+    }
+    /**
+     * Descifra un {@link CompressedContainer} con el cifrado guardado en su cabecera y guarda el texto en la carpeta
+     * {@code Files/}.
+     *
+     * @param inputPath La ruta del contenedor.
+     * @return La ruta del archivo descifrado, o null si hubo un error.
+     */
+    public String manejoDelDescifradoComprimido(String inputPath) {
+        String outputPath = fileHandler.generateOutputPath(inputPath, "dZ");
+        if (!procesarArchivo(inputPath, outputPath, this::descifrarFlujoComprimido)) {
+            System.err.println("Error: No se pudo descifrar el contenedor " + inputPath);
+            return null;
         }
-        String decryptedText = decrypted.decrypt(text, shift); // Descifra el texto
-        String outputPath = fileHandler.generateOutputPath(inputPath, "dC");
-        fileHandler.writeToFile(outputPath, decryptedText); // Escribe el texto descifrado en un archivo
         System.out.println("Texto descifrado guardado en: " + outputPath);
+        return outputPath;
+    }
+    /**
+     * Cifra un flujo y lo escribe como {@link CompressedContainer}. Los flujos no se cierran.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo donde se escribe el contenedor.
+     * @param especificacion La descripcion del motor de cifrado, que se guarda en la cabecera.
+     * @return {@code true} si el contenedor se escribio, o {@code false} si hubo un error.
+     * @throws IllegalArgumentException Si la descripcion del motor no es valida.
+     */
+    public boolean cifrarFlujoComprimido(InputStream input, OutputStream output, String especificacion) {
+        CipherEngine engine = crearMotor(especificacion);
+        OperationMetrics metrics = OperationMetrics.start("cifrar-comprimido", "-", alphabet);
+        boolean ok = container.write(input, output, especificacion, alphabet, cipher.encryptor(engine), metrics);
+        OperationMetrics.finish(metrics, ok);
+        return ok;
     }
     /**
-     * Procesa el descifrado de datos utilizando un archivo de propiedades.
-     * Este metodo lee un archivo de propiedades que contiene la configuracion necesaria
-     * para realizar el descifrado, incluyendo la ruta del archivo a descifrar y el
-     * desplazamiento utilizado para el descifrado.
+     * Lee un {@link CompressedContainer} de un flujo y escribe el texto descifrado con el cifrado de su cabecera. Los
+     * flujos no se cierran.
      *
-     * @param propertiesFilePath La ruta del archivo de propiedades que contiene la configuracion
-     *                           necesaria para el descifrado. Este archivo debe incluir
-     *                           las claves necesarias para identificar el archivo a descifrar
-     *                           y el desplazamiento.
+     * @param input El flujo con el contenedor.
+     * @param output El flujo de salida, en UTF-8.
+     * @return {@code true} si el contenedor se descifro y no esta danado, o {@code false} si hubo un error.
      */
-    public void procesarDescifradoDesdePropiedades(String propertiesFilePath) {
-        decrypted.decryptFromProperties(propertiesFilePath);
+    public boolean descifrarFlujoComprimido(InputStream input, OutputStream output) {
+        OperationMetrics metrics = OperationMetrics.start("descifrar-comprimido", "-", alphabet);
+        boolean ok = container.read(input, output, alphabet,
+                especificacion -> decrypted.decryptor(crearMotor(especificacion)), metrics);
+        OperationMetrics.finish(metrics, ok);
+        return ok;
+    }
+    /**
+     * Aplica una operacion sobre flujos de un archivo a otro, escribiendo en un temporal que solo reemplaza a la
+     * salida si la operacion termina bien.
+     */
+    private boolean procesarArchivo(String inputPath, String outputPath, OperacionFlujo operacion) {
+        Path target = Paths.get(outputPath);
+        Path temporary = MyFileHandler.temporaryPath(target);
+        try {
+            boolean ok;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(inputPath));
+                 OutputStream out = new FileOutputStream(temporary.toFile())) {
+                ok = operacion.aplicar(in, out);
+            }
+            if (ok) {
+                MyFileHandler.moveIntoPlace(temporary, target);
+            }
+            return ok;
+        } catch (IOException e) {
+            System.err.println("Error al procesar el archivo: " + e.getMessage());
+            return false;
+        } finally {
+            MyFileHandler.deleteQuietly(temporary);             // Ya no existe si se movio
+        }
+    }
+    /**
+     * Una operacion de un flujo de entrada a uno de salida.
+     */
+    private interface OperacionFlujo {
+        boolean aplicar(InputStream input, OutputStream output);
+    }
+    /**
+     * Completa las mediciones de una operacion de {@link MappedFileCipher}: como los bytes mapeados no se leen ni se
+     * escriben por separado, todo el tiempo cuenta como desplazamiento y solo se registran los bytes de la entrada.
+     */
+    private static boolean medirMapeado(boolean ok, String inputPath, OperationMetrics metrics) {
+        if (metrics != null) {
+            metrics.endShift();
+            metrics.addBytes(new File(inputPath).length());
+        }
+        return ok;
+    }
+    /**
+     * Crea un motor de cifrado a partir de su descripcion {@code tipo:clave}:
+     * <pre>
+     * cesar:3             desplazamiento de 3 posiciones (el cifrado original)
+     * vigenere:CLAVE      Vigenere con la clave CLAVE
+     * afin:5,8            afin con a = 5 y b = 8
+     * alfabeto:PALABRA    alfabeto permutado con la palabra clave PALABRA
+     * </pre>
+     *
+     * @param especificacion La descripcion del motor.
+     * @return El motor de cifrado.
+     * @throws IllegalArgumentException Si el tipo no existe o la clave no es valida.
+     */
+    public CipherEngine crearMotor(String especificacion) {
+        String[] partes = especificacion.split(":", 2);
+        String clave = partes.length > 1 ? partes[1] : "";
+        switch (partes[0].toLowerCase(Locale.ROOT)) {
+            case "cesar":
+                return cipher.caesar(Integer.parseInt(clave.trim()));
+            case "vigenere":
+                return new VigenereEngine(alphabet, clave);
+            case "afin":
+                String[] coeficientes = clave.split(",");
+                if (coeficientes.length != 2) {
+                    throw new IllegalArgumentException("El cifrado afin necesita dos coeficientes: afin:a,b");
+                }
+                return new AffineEngine(alphabet, Integer.parseInt(coeficientes[0].trim()),
+                        Integer.parseInt(coeficientes[1].trim()));
+            case "alfabeto":
+                return new KeyedAlphabetEngine(alphabet, clave);
+            default:
+                throw new IllegalArgumentException("Cifrado desconocido: " + partes[0]);
+        }
+    }
+    /**
+     * Obtiene el cifrador de archivos mapeados, que se crea la primera vez que se usa: con varios hilos tiene su
+     * propio {@link java.util.concurrent.ForkJoinPool}, que no hace falta crear si no se cifra nada mapeado.
+     */
+    private synchronized MappedFileCipher mappedCipher() {
+        if (mappedCipher == null) {
+            mappedCipher = new MappedFileCipher(paralelismo, alphabet);
+        }
+        return mappedCipher;
+    }
+    /**
+     * Obtiene el almacen de propiedades, que se abre (y se carga su indice) la primera vez que se usa, de modo que
+     * una ejecucion que no guarda ni busca propiedades no lo lee.
+     */
+    private synchronized PropertiesStore propertiesStore() {
+        if (propertiesStore == null) {
+            propertiesStore = new PropertiesStore();
+        }
+        return propertiesStore;
+    }
+    /**
+     * Transforma un archivo por bloques, solapando la lectura y la escritura si se eligio con
+     * {@link #setSegmentado(boolean)}.
+     */
+    private boolean transformarArchivo(String inputPath, String outputPath, Consumer<CharBuffer> transform,
+                                       OperationMetrics metrics) {
+        return segmentado ? pipelinedCipher.transform(inputPath, outputPath, transform, metrics)
+                : fileHandler.transformFile(inputPath, outputPath, transform, metrics);
+    }
+    /**
+     * Cifra todos los archivos de un directorio con {@link BatchEncryptor}, usando un hilo por procesador, y
+     * guarda un unico manifiesto con el desplazamiento de cada archivo. Cada archivo cifrado tambien se registra en
+     * el almacen de propiedades.
+     *
+     * @param inputDirectory La ruta del directorio que se va a cifrar.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @return La ruta del manifiesto, o null si hubo un error.
+     */
+    public String manejoDelCifradoDirectorio(String inputDirectory, int shift) {
+        return manejoDelCifradoDirectorio(inputDirectory, shift, false);
+    }
+    /**
+     * Cifra todos los archivos de un directorio con {@link BatchEncryptor}, opcionalmente de forma incremental: con
+     * {@code incremental} la salida va siempre a la misma carpeta y los archivos registrados en la
+     * {@link EncryptionCache} de {@code Properties/cache.db} que no cambiaron no se vuelven a cifrar.
+     *
+     * @param inputDirectory La ruta del directorio que se va a cifrar.
+     * @param shift El valor de desplazamiento utilizado para el cifrado.
+     * @param incremental {@code true} para cifrar solo los archivos nuevos o modificados.
+     * @return La ruta del manifiesto, o null si hubo un error.
+     */
+    public String manejoDelCifradoDirectorio(String inputDirectory, int shift, boolean incremental) {
+        BatchEncryptor batch = new BatchEncryptor(Runtime.getRuntime().availableProcessors(), propertiesStore(), cipher,
+                incremental ? new EncryptionCache() : null);
+        return batch.encryptDirectory(inputDirectory, shift);
+    }
+    /**
+     * Procesa el descifrado de datos utilizando las propiedades guardadas al cifrar.
+     * Si la ruta indicada es la de un archivo cifrado registrado en el {@link PropertiesStore}, su
+     * desplazamiento se obtiene del indice del almacen; si no, la ruta se trata como un archivo
+     * {@code proper_*.txt} de versiones anteriores, que incluye la ruta del archivo a descifrar y el
+     * desplazamiento. Un {@link CompressedContainer} se descifra sin propiedades, con el cifrado de su cabecera.
+     *
+     * @param path La ruta (o el nombre) del archivo cifrado, o la ruta de un archivo de propiedades antiguo.
+     * @return {@code true} si se guardo el texto descifrado, o {@code false} si hubo un error.
+     */
+    public boolean procesarDescifradoDesdePropiedades(String path) {
+        if (CompressedContainer.isContainer(path)) {
+            return manejoDelDescifradoComprimido(path) != null;    // Lleva el cifrado en la cabecera
+        }
+        PropertiesStore.Entry properties = propertiesStore().findByEncrypted(path);
+        if (properties != null) {
+            return decrypted.decryptFromProperties(properties);
+        }
+        return decrypted.decryptFromProperties(path);
     }
     /**
      * Metodo guardarProperties, guarda propiedades necesarias al cifrar un archivo de texto.
-     * Este metodo genera un archivo de propiedades que contiene la ruta del archivo original,
-     * la ruta del archivo cifrado y el desplazamiento utilizado en el cifrado. El nombre del
-     * archivo de propiedades se basa en un timestamp para asegurar que sea unico.
+     * Este metodo agrega al {@link PropertiesStore} un registro con la ruta del archivo original,
+     * la ruta del archivo cifrado y el desplazamiento utilizado en el cifrado, que despues se puede
+     * buscar por la ruta del archivo cifrado.
      *
      * @param inputPath La ruta del archivo original que se esta cifrando.
      * @param shift El valor de desplazamiento utilizado en el cifrado.
      * @param outputPath La ruta donde se guarda el archivo cifrado.
      */
     public void guardarProperties(String inputPath, int shift, String outputPath) {
-        String timestamp = new SimpleDateFormat("dd-HH-mm-ss").format(new Date());
-        String properFileName = String.format("proper_%s.txt", timestamp);
-        Path propFilePath = Paths.get("Properties").resolve(properFileName);
-        try (BufferedWriter writer = Files.newBufferedWriter(propFilePath)) {
-            writer.write("Original File Path: " + inputPath + "\n");
-            writer.write("Encrypted File Path: " + outputPath + "\n");
-            writer.write("Desplazamiento: " + shift + "\n");
-        } catch (IOException e) {
-            System.err.println("Error al guardar los datos: " + e.getMessage());
-        }
+        propertiesStore().append(inputPath, outputPath, shift);
     }
 }
\ No newline at end of file
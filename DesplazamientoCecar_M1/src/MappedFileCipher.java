@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * La clase {@code MappedFileCipher} cifra y descifra archivos UTF-8 mapeandolos en memoria con
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ *
+ * <p>A diferencia de {@link MyFileHandler#transformFile}, los bytes no se decodifican a {@code char} ni se vuelven a
+ * codificar: cada bloque del archivo se traduce byte a byte con un {@link Utf8Shifter}. El archivo se procesa en
+ * bloques de hasta {@code CHUNK_SIZE} bytes cuyos limites nunca cortan una secuencia UTF-8, por lo que admite
+ * archivos de cualquier tamano.</p>
+ *
+ * <p>Como cada caracter se cifra sin depender de los demas, los bloques pueden procesarse en paralelo en un
+ * {@link ForkJoinPool}: primero se calcula el tamano cifrado de cada bloque, con esos tamanos se obtiene la posicion
+ * de cada bloque en el archivo de salida y despues cada bloque se escribe en su posicion. Los hilos del
+ * {@link ForkJoinPool} se terminan con {@link #close()}.</p>
+ */
+public class MappedFileCipher implements AutoCloseable {
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_SEQUENCE = 4;      // Bytes maximos de una secuencia UTF-8
+    private static final int CHUNKS_PER_THREAD = 4; // Bloques por hilo para repartir mejor el trabajo
+
+    private final Alphabet alphabet;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor de la clase {@code MappedFileCipher}. Procesa los archivos en un solo hilo.
+     */
+    public MappedFileCipher() {
+        this(1);
+    }
+
+    /**
+     * Constructor de la clase {@code MappedFileCipher} con un nivel de paralelismo.
+     *
+     * @param parallelism El numero de hilos que procesaran los bloques; con 1 se procesan en el hilo que llama.
+     * @throws IllegalArgumentException Si {@code parallelism} es menor a 1.
+     */
+    public MappedFileCipher(int parallelism) {
+        this(parallelism, Alphabet.getDefault());
+    }
+
+    /**
+     * Constructor de la clase {@code MappedFileCipher} con un nivel de paralelismo y otro alfabeto.
+     *
+     * @param parallelism El numero de hilos que procesaran los bloques; con 1 se procesan en el hilo que llama.
+     * @param alphabet El alfabeto del cifrado Cesar de {@link #encrypt(String, String, int)}.
+     * @throws IllegalArgumentException Si {@code parallelism} es menor a 1.
+     */
+    public MappedFileCipher(int parallelism, Alphabet alphabet) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1.");
+        }
+        this.alphabet = alphabet;
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Termina los hilos que procesan los bloques. Despues de cerrarlo, un objeto con paralelismo mayor a 1 ya no
+     * transforma archivos.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Cifra un archivo con el desplazamiento indicado.
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param outputPath La ruta donde se guardara el archivo cifrado.
+     * @param desplazamiento El numero de posiciones que se desplazaran los caracteres.
+     * @return {@code true} si el archivo se cifro, o {@code false} si ocurre un error.
+     */
+    public boolean encrypt(String inputPath, String outputPath, int desplazamiento) {
+        return transform(inputPath, outputPath, alphabet.isSupplementary() ? null : alphabet.getShiftTable(desplazamiento));
+    }
+
+    /**
+     * Descifra un archivo con el desplazamiento que se utilizo al cifrarlo.
+     *
+     * @param inputPath La ruta del archivo cifrado.
+     * @param outputPath La ruta donde se guardara el archivo descifrado.
+     * @param desplazamiento El desplazamiento utilizado al cifrar.
+     * @return {@code true} si el archivo se descifro, o {@code false} si ocurre un error.
+     */
+    public boolean decrypt(String inputPath, String outputPath, int desplazamiento) {
+        return transform(inputPath, outputPath, alphabet.isSupplementary() ? null : alphabet.getShiftTable(-desplazamiento));
+    }
+
+    /**
+     * Cifra un archivo con un motor de cifrado de una sola tabla ({@link CipherEngine#getEncryptTable()}).
+     *
+     * @param inputPath La ruta del archivo que se va a cifrar.
+     * @param outputPath La ruta donde se guardara el archivo cifrado.
+     * @param engine El motor de cifrado.
+     * @return {@code true} si el archivo se cifro, o {@code false} si ocurre un error o el motor usa varias tablas.
+     */
+    public boolean encrypt(String inputPath, String outputPath, CipherEngine engine) {
+        return transform(inputPath, outputPath, engine.getEncryptTable());
+    }
+
+    /**
+     * Descifra un archivo con un motor de cifrado de una sola tabla ({@link CipherEngine#getDecryptTable()}).
+     *
+     * @param inputPath La ruta del archivo cifrado.
+     * @param outputPath La ruta donde se guardara el archivo descifrado.
+     * @param engine El motor con el que se cifro el archivo.
+     * @return {@code true} si el archivo se descifro, o {@code false} si ocurre un error o el motor usa varias tablas.
+     */
+    public boolean decrypt(String inputPath, String outputPath, CipherEngine engine) {
+        return transform(inputPath, outputPath, engine.getDecryptTable());
+    }
+
+    /**
+     * Traduce un archivo bloque a bloque.
+     *
+     * <p>Se hace en dos fases: en la primera se calcula el tamano del resultado de cada bloque y en la segunda se
+     * mapea la region que le corresponde en el archivo de salida y se escribe en ella la traduccion.</p>
+     *
+     * @param inputPath La ruta del archivo de entrada.
+     * @param outputPath La ruta del archivo de salida.
+     * @param table La tabla de traduccion a aplicar.
+     * @return {@code true} si el archivo se proceso completo, o {@code false} si ocurre un error.
+     */
+    private boolean transform(String inputPath, String outputPath, char[] table) {
+        if (table == null || !Utf8Shifter.supports(table)) {
+            System.err.println("Error: El cifrado mapeado solo admite cifrados de una tabla con caracteres menores a U+0800.");
+            return false;
+        }
+        Utf8Shifter shifter = new Utf8Shifter(table);
+        Path target = Paths.get(outputPath);
+        Path temporary = MyFileHandler.temporaryPath(target);     // Reemplaza la salida solo al terminar
+        try {
+            try (FileChannel input = FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(temporary, StandardOpenOption.READ,
+                         StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                long[] bounds = chunkBounds(input);
+                int chunks = bounds.length - 1;
+
+                List<Callable<Long>> sizing = new ArrayList<>(chunks);         // Fase 1: tamano de cada bloque
+                for (int i = 0; i < chunks; i++) {
+                    long start = bounds[i];
+                    int length = (int) (bounds[i + 1] - start);
+                    sizing.add(() -> shifter.outputLength(input.map(FileChannel.MapMode.READ_ONLY, start, length), 0,
+                            length));
+                }
+                List<Long> sizes = run(sizing);
+
+                long[] offsets = new long[chunks + 1];                          // Posicion de cada bloque en la salida
+                for (int i = 0; i < chunks; i++) {
+                    offsets[i + 1] = offsets[i] + sizes.get(i);
+                }
+                if (offsets[chunks] > 0) {
+                    output.write(ByteBuffer.allocate(1), offsets[chunks] - 1);  // Reserva el tamano final del archivo
+                }
+
+                List<Callable<Long>> writing = new ArrayList<>(chunks);        // Fase 2: escribir cada bloque
+                for (int i = 0; i < chunks; i++) {
+                    long start = bounds[i];
+                    int length = (int) (bounds[i + 1] - start);
+                    long outStart = offsets[i];
+                    long outLength = offsets[i + 1] - outStart;
+                    writing.add(() -> {
+                        MappedByteBuffer in = input.map(FileChannel.MapMode.READ_ONLY, start, length);
+                        MappedByteBuffer out = output.map(FileChannel.MapMode.READ_WRITE, outStart, outLength);
+                        return (long) shifter.transform(in, 0, length, out, 0);
+                    });
+                }
+                run(writing);
+            }
+            MyFileHandler.moveIntoPlace(temporary, target);
+        } catch (IOException e) {
+            System.err.println("Error al transformar el archivo: " + e.getMessage());
+            return false;
+        } finally {
+            MyFileHandler.deleteQuietly(temporary);             // Ya no existe si se movio
+        }
+        return true;
+    }
+
+    /**
+     * Divide el archivo en bloques alineados al inicio de un caracter UTF-8.
+     *
+     * <p>Con un solo hilo se usan bloques de {@code CHUNK_SIZE}; con varios, el archivo se reparte en
+     * {@code CHUNKS_PER_THREAD} bloques por hilo (de al menos {@code MIN_CHUNK_SIZE}) para que ningun hilo se
+     * quede sin trabajo mientras otro termina un bloque grande.</p>
+     *
+     * @param input El canal del archivo de entrada.
+     * @return Las posiciones de inicio de cada bloque, seguidas del tamano del archivo.
+     * @throws IOException Si no se puede leer el archivo.
+     */
+    private long[] chunkBounds(FileChannel input) throws IOException {
+        long size = input.size();
+        long chunkSize = CHUNK_SIZE;
+        if (parallelism > 1) {
+            long perThread = size / ((long) parallelism * CHUNKS_PER_THREAD);
+            chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(CHUNK_SIZE, perThread));
+        }
+        List<Long> bounds = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(MAX_SEQUENCE);
+        long pos = 0;
+        while (pos < size) {
+            bounds.add(pos);
+            long end = Math.min(pos + chunkSize, size);
+            probe.clear();
+            input.read(probe, end);
+            pos = end + alignedEnd(probe, 0, probe.position());
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Ejecuta las tareas en el {@link ForkJoinPool}, o en el hilo actual si el paralelismo es 1.
+     *
+     * @param tasks Las tareas a ejecutar.
+     * @return El resultado de cada tarea, en el mismo orden.
+     * @throws IOException Si alguna tarea falla.
+     */
+    private List<Long> run(List<Callable<Long>> tasks) throws IOException {
+        List<Long> results = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null) {
+                for (Callable<Long> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            for (Future<Long> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Cifrado interrumpido.", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        } catch (Exception e) {
+            throw asIOException(e);
+        }
+    }
+
+    /**
+     * Convierte el error de una tarea en {@link IOException}, propagando tal cual las excepciones no comprobadas.
+     */
+    private static IOException asIOException(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    /**
+     * Ajusta el final de un bloque para que no quede entre los bytes de una secuencia UTF-8.
+     *
+     * @param buffer El buffer con los bytes siguientes al final propuesto.
+     * @param end El final propuesto.
+     * @param limit El numero de bytes validos del buffer.
+     * @return El primer indice a partir de {@code end} que no es un byte de continuacion.
+     */
+    private static int alignedEnd(ByteBuffer buffer, int end, int limit) {
+        while (end < limit && Utf8Shifter.isContinuation(buffer.get(end))) {
+            end++;                                          // Avanza hasta el inicio del siguiente caracter
+        }
+        return end;
+    }
+}
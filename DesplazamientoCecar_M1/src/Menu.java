@@ -29,7 +29,9 @@ public class Menu {
             System.out.println("1. Encriptar");
             System.out.println("2. Desencriptar");
             System.out.println("3. Desencriptar desde Properties");
-            System.out.println("4. Salir");
+            System.out.println("4. Encriptar directorio");
+            System.out.println("5. Desencriptar sin desplazamiento (automatico)");
+            System.out.println("6. Salir");
 
             int optionMenu = readInteger();
             switch (optionMenu) {
@@ -43,6 +45,12 @@ public class Menu {
                     manejoUsuarioAlDecifrarDesdeProperties();
                     break;
                 case 4:
+                    manejoUsuarioAlCifrarDirectorio();
+                    break;
+                case 5:
+                    manejoUsuarioAlDescifrarAutomatico();
+                    break;
+                case 6:
                     System.out.println("\n" + "saliendo" );
                     return; //finalizando programa
                 default:
@@ -98,20 +106,51 @@ public class Menu {
     }
 
     /**
-     * Maneja la logica para desencriptar un archivo utilizando un archivo de Properties.
+     * Maneja la logica para desencriptar un archivo utilizando sus Properties.
      * <p>
-     * Este metodo solicita al usuario que ingrese la ruta del archivo de 'proper' que contiene la informacion
-     * necesaria para el proceso de desencriptacion, como la ruta del archivo encriptado y el desplazamiento.
-     * Luego, llama al metodo correspondiente en el gestor de desencriptacion para procesar el archivo de propiedades
-     * y realizar la desencriptacion.
+     * Este metodo solicita al usuario que ingrese la ruta (o el nombre) del archivo encriptado, cuyo desplazamiento
+     * se busca en el almacen de propiedades, o la ruta de un archivo 'proper' antiguo que contiene la ruta del
+     * archivo encriptado y el desplazamiento. Luego, llama al metodo correspondiente en el gestor de
+     * desencriptacion para realizar la desencriptacion.
      * </p>
      */
     private void manejoUsuarioAlDecifrarDesdeProperties()   {
-        System.out.println("Ingrese la ruta de 'Propepiedades' a descifrar: ");
+        System.out.println("Ingrese la ruta del archivo cifrado (o de un 'proper' antiguo) a descifrar: ");
         String propertiesPath = scanner.nextLine();
         managerEncryption.procesarDescifradoDesdePropiedades(propertiesPath);
     }
 
+    /**
+     * Maneja la logica para encriptar todos los archivos de un directorio.
+     * <p>
+     * Este metodo solicita al usuario la ruta del directorio y el desplazamiento, y llama al gestor de encriptacion
+     * para cifrar el directorio completo. En lugar de un archivo de propiedades por archivo se guarda un unico
+     * manifiesto con la ruta original, la ruta cifrada y el desplazamiento de cada archivo.
+     * </p>
+     */
+    private void manejoUsuarioAlCifrarDirectorio() {
+        System.out.println("Ingrese la ruta del directorio a Encriptar: ");
+        String directoryPath = scanner.nextLine();
+        System.out.println("Ingrese el desplazamiento: ");
+        int desplazamiento = readInteger();
+        if (managerEncryption.manejoDelCifradoDirectorio(directoryPath, desplazamiento) == null) {
+            System.out.println("Error: No se pudo cifrar el directorio.");
+        }
+    }
+
+    /**
+     * Maneja la logica para desencriptar un archivo cuyo desplazamiento se desconoce.
+     * <p>
+     * Este metodo solicita al usuario la ruta del archivo cifrado y llama al gestor de desencriptacion, que calcula
+     * el desplazamiento con analisis de frecuencias y desencripta el archivo con el.
+     * </p>
+     */
+    private void manejoUsuarioAlDescifrarAutomatico() {
+        System.out.println("Ingrese la ruta del archivo a descifrar: ");
+        inputPath = scanner.nextLine();
+        managerEncryption.manejoDelDescifradoAutomatico(inputPath);
+    }
+
     /**
      * Lee un numero entero del input del usuario.
      * <p>
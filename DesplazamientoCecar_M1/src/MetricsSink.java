@@ -0,0 +1,24 @@
+/**
+ * Destino de las mediciones de {@link OperationMetrics}, por ejemplo un registro o un sistema de monitoreo. Se
+ * instala con {@link OperationMetrics#setSink(MetricsSink)}.
+ *
+ * <p>Se llama una vez al terminar cada operacion, desde el hilo que la hizo, por lo que las implementaciones deben
+ * ser seguras entre hilos si el programa procesa varios archivos a la vez ({@link BatchEncryptor}).</p>
+ */
+@FunctionalInterface
+public interface MetricsSink {
+
+    /**
+     * Recibe las mediciones de una operacion terminada.
+     *
+     * @param metrics Las mediciones; no deben modificarse.
+     */
+    void record(OperationMetrics metrics);
+
+    /**
+     * @return Un destino que escribe una linea por operacion en la salida de error.
+     */
+    static MetricsSink standardError() {
+        return metrics -> System.err.println(metrics);
+    }
+}
@@ -1,27 +1,54 @@
 import java.io.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 /**
  * <p>La clase {@code MyFileHandler} proporciona metodos para manejar la
  * creacion de directorios, escritura y lectura de contenido y generacion de rutas de salida para archivos procesados.</p>
  * <p>La {@code outputDirectory} es la carpeta de salida y {@code properDirectory} es la carpeta de propiedades, ambos
  * almacenaran los archivos generados.</p>
+ * <p>Los archivos se escriben primero en un temporal de la misma carpeta que despues se mueve a su ruta final, de
+ * modo que quien lea la salida nunca ve un archivo a medias, y las rutas generadas son unicas aunque varios hilos o
+ * procesos generen miles por segundo.</p>
  */
 public class MyFileHandler {
+    private static final int BUFFER_SIZE = 64 * 1024;  // Caracteres por bloque al transformar archivos
+    private static final int MAX_BASE_NAME = 40;        // Caracteres del nombre original en las rutas generadas
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final AtomicLong SEQUENCE = new AtomicLong();
     private final String outputDirectory;
     private final String properDirectory;
+    private volatile boolean directoriesCreated;
 
     /**
      * <p>Constructor de la clase {@code MyFileHandler}.
-     * Inicializa los directorios de salida y de propiedades, creando
-     * las carpetas si no existen.</p>
+     * Inicializa los directorios de salida y de propiedades. Las carpetas no se crean aqui sino la primera vez que se
+     * genera una ruta en ellas o se escribe un archivo, para que una ejecucion que no escribe en ellas (por ejemplo
+     * de la entrada a la salida estandar) no toque el disco.</p>
      * <p>La carpeta Files guardara los archivos de salida y La carpeta Properties guardara los proper generados.</p>
      */
     public MyFileHandler() {
         this.outputDirectory = "Files";
-        createOutputDirectory();                // Crear la carpeta si no existe
         this.properDirectory = "Properties";
-        createProperDirectory();                // Crear la carpeta de propiedades si no existe
+    }
+
+    /**
+     * Crea las carpetas de salida y de propiedades si no existen, solo la primera vez.
+     */
+    private void createDirectories() {
+        if (!directoriesCreated) {
+            createOutputDirectory();            // Crear la carpeta si no existe
+            createProperDirectory();            // Crear la carpeta de propiedades si no existe
+            directoriesCreated = true;
+        }
     }
 
     /**
@@ -47,11 +74,19 @@ public class MyFileHandler {
      * @param content El contenido que se escribira en el archivo.
      */
     public void writeToFile(String fileName, String content) {
-        try (FileWriter writer = new FileWriter(fileName)) {
-            writer.write(content);                              // Escribe en el contenido proporcionado
-            writer.write(System.lineSeparator());               // Salto de línea después del contenido
+        createDirectories();
+        Path target = Paths.get(fileName);
+        Path temporary = temporaryPath(target);
+        try {
+            try (FileWriter writer = new FileWriter(temporary.toFile())) {
+                writer.write(content);                          // Escribe en el contenido proporcionado
+                writer.write(System.lineSeparator());           // Salto de línea después del contenido
+            }
+            moveIntoPlace(temporary, target);
         } catch (IOException e) {
             System.err.println("Error al escribir en el archivo: " + e.getMessage());   // Captura la excepción
+        } finally {
+            deleteQuietly(temporary);                           // Ya no existe si se movio
         }
     }
 
@@ -83,19 +118,271 @@ public class MyFileHandler {
         return content.toString().trim();     // Convierte el contenido a una cadena y quita el salto de línea
     }
 
+    /**
+     * El metodo {@code transformFile} lee un archivo por bloques, transforma cada bloque y lo escribe en otro archivo.
+     * <p>A diferencia de {@link #readFromFile(String)} y {@link #writeToFile(String, String)}, el archivo nunca se
+     * carga completo en memoria: se reutiliza un unico {@code CharBuffer} de {@code BUFFER_SIZE} caracteres, por lo
+     * que la memoria usada no depende del tamano del archivo.</p>
+     * <p>El contenido se copia tal cual (sin {@code trim()} ni cambios en los saltos de linea), de modo que cifrar y
+     * descifrar un archivo devuelve exactamente los mismos bytes. Los archivos se leen y escriben en UTF-8.</p>
+     * <p>El resultado se escribe en un temporal que solo reemplaza a {@code outputPath} si se proceso completo.</p>
+     *
+     * @param inputPath La ruta del archivo que se leera.
+     * @param outputPath La ruta del archivo donde se escribira el resultado.
+     * @param transform La transformacion que se aplica, en el mismo lugar, a los caracteres restantes de cada bloque.
+     * @return {@code true} si el archivo se proceso completo, o {@code false} si ocurre un error.
+     */
+    public boolean transformFile(String inputPath, String outputPath, Consumer<CharBuffer> transform) {
+        return transformFile(inputPath, outputPath, transform, null);
+    }
+
+    /**
+     * Funciona igual que {@link #transformFile(String, String, Consumer)} y ademas mide la lectura, la
+     * transformacion y la escritura de cada bloque.
+     *
+     * @param inputPath La ruta del archivo que se leera.
+     * @param outputPath La ruta del archivo donde se escribira el resultado.
+     * @param transform La transformacion que se aplica, en el mismo lugar, a los caracteres restantes de cada bloque.
+     * @param metrics Las mediciones de la operacion, o {@code null} para no medir.
+     * @return {@code true} si el archivo se proceso completo, o {@code false} si ocurre un error.
+     */
+    public boolean transformFile(String inputPath, String outputPath, Consumer<CharBuffer> transform,
+                                 OperationMetrics metrics) {
+        Path target = Paths.get(outputPath);
+        Path temporary = temporaryPath(target);
+        try {
+            try (Reader reader = new InputStreamReader(new FileInputStream(inputPath), StandardCharsets.UTF_8);
+                 Writer writer = new OutputStreamWriter(new FileOutputStream(temporary.toFile()), StandardCharsets.UTF_8)) {
+                transform(reader, writer, transform, metrics);
+            }
+            moveIntoPlace(temporary, target);
+        } catch (IOException e) {
+            System.err.println("Error al transformar el archivo: " + e.getMessage());
+            return false;
+        } finally {
+            deleteQuietly(temporary);                           // Ya no existe si se movio
+        }
+        if (metrics != null) {
+            metrics.addBytes(new File(inputPath).length());
+        }
+        return true;
+    }
+
+    /**
+     * El metodo {@code transformStream} funciona igual que {@link #transformFile(String, String, Consumer)} pero
+     * sobre flujos ya abiertos, por ejemplo {@code System.in} y {@code System.out}. Los flujos no se cierran; la
+     * salida se vacia al terminar.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo de salida, donde se escribe en UTF-8.
+     * @param transform La transformacion que se aplica, en el mismo lugar, a los caracteres restantes de cada bloque.
+     * @return {@code true} si el flujo se proceso completo, o {@code false} si ocurre un error.
+     */
+    public boolean transformStream(InputStream input, OutputStream output, Consumer<CharBuffer> transform) {
+        return transformStream(input, output, transform, null);
+    }
+
+    /**
+     * Funciona igual que {@link #transformStream(InputStream, OutputStream, Consumer)} y ademas mide la operacion,
+     * incluidos los bytes leidos del flujo.
+     *
+     * @param input El flujo de entrada, en UTF-8.
+     * @param output El flujo de salida, donde se escribe en UTF-8.
+     * @param transform La transformacion que se aplica, en el mismo lugar, a los caracteres restantes de cada bloque.
+     * @param metrics Las mediciones de la operacion, o {@code null} para no medir.
+     * @return {@code true} si el flujo se proceso completo, o {@code false} si ocurre un error.
+     */
+    public boolean transformStream(InputStream input, OutputStream output, Consumer<CharBuffer> transform,
+                                   OperationMetrics metrics) {
+        if (metrics != null) {
+            input = new FilterInputStream(input) {         // Cuenta los bytes que lee el decodificador
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    int read = super.read(bytes, offset, length);
+                    if (read > 0) {
+                        metrics.addBytes(read);
+                    }
+                    return read;
+                }
+            };
+        }
+        try {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            transform(new InputStreamReader(input, StandardCharsets.UTF_8), writer, transform, metrics);
+            writer.flush();
+            if (metrics != null) {
+                metrics.endWrite();
+            }
+        } catch (IOException e) {
+            System.err.println("Error al transformar el flujo: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copia el lector en el escritor por bloques de {@code BUFFER_SIZE} caracteres, transformando cada bloque.
+     * <p>Un bloque nunca termina entre los dos {@code char} de un caracter suplementario (un emoji, por ejemplo): si
+     * el ultimo es un surrogate alto se guarda para el bloque siguiente, de modo que la transformacion siempre recibe
+     * el par completo.</p>
+     * <p>Si hay mediciones, el tiempo de cada fase se suma a la lectura, la transformacion o la escritura.</p>
+     */
+    private void transform(Reader reader, Writer writer, Consumer<CharBuffer> transform, OperationMetrics metrics)
+            throws IOException {
+        CharBuffer buffer = CharBuffer.allocate(BUFFER_SIZE);
+        while (reader.read(buffer) != -1) {                 // Llena el buffer con el siguiente bloque
+            buffer.flip();
+            int end = buffer.limit();
+            if (end > 1 && Character.isHighSurrogate(buffer.get(end - 1))) {
+                buffer.limit(end - 1);                      // Deja la mitad del par para el siguiente bloque
+            }
+            apply(buffer, writer, transform, metrics);
+            buffer.position(buffer.limit()).limit(end);
+            buffer.compact();
+        }
+        buffer.flip();
+        if (buffer.hasRemaining()) {                        // Surrogate sin pareja al final del texto
+            apply(buffer, writer, transform, metrics);
+        }
+    }
+
+    /**
+     * Transforma un bloque en el mismo buffer y lo escribe.
+     */
+    private static void apply(CharBuffer buffer, Writer writer, Consumer<CharBuffer> transform,
+                              OperationMetrics metrics) throws IOException {
+        if (metrics != null) {
+            metrics.endRead();
+            metrics.count(buffer);
+        }
+        transform.accept(buffer);                           // Transforma el bloque en el mismo buffer
+        if (metrics != null) {
+            metrics.endShift();
+        }
+        writer.write(buffer.array(), buffer.position(), buffer.remaining());
+        if (metrics != null) {
+            metrics.endWrite();
+        }
+    }
+
     /**
      * El metodo generateOutputPath recibe dos parametros para generar un ruta de salida para un archivo basado en un
-     * sufijo y un timestamp.
-     * <p>Este metodo crea un identificador unico basado en la fecha y hora actual, ademas de construir la ruta de
-     * salida diferenciandola al proporcionarle el sufijo y el timestamp, evitando que se sobreescriba en el archivo.
-     * El nombre del archivo resultante tendra la forma: {outputDirectory}/{suffix}_{timestamp}.txt.</p>
-     * @param inputPath Ruta del archivo de entrada (Lo queria para el nombre pero lo hace extenso asi que no se utiliza)
+     * sufijo, el nombre del archivo de entrada y un identificador unico.
+     * <p>El nombre del archivo resultante tendra la forma
+     * {outputDirectory}/{suffix}_{nombre}_{identificador}.txt, donde {nombre} es el nombre del archivo de entrada sin
+     * extension (recortado a {@code MAX_BASE_NAME} caracteres) y el identificador es el de {@link #uniqueId()}, por lo
+     * que dos llamadas nunca devuelven la misma ruta aunque se hagan en el mismo segundo o desde varios hilos.</p>
+     * @param inputPath Ruta del archivo de entrada, de la que se toma el nombre.
      * @param suffix Un sufijo que se anadira al nombre del archivo de salida para diferenciar archivos cifrados y
      *               desencriptados.
      * @return La ruta de salida generada como una cadena.
      */
     public String generateOutputPath(String inputPath, String suffix){
-        String timestamp = new SimpleDateFormat("dd-HH-mm-ss").format(new Date());
-        return String.format("%s%s%s_%s.txt", outputDirectory, File.separator, suffix, timestamp);
+        return generateOutputPath(inputPath, suffix, ".txt");
+    }
+
+    /**
+     * Funciona igual que {@link #generateOutputPath(String, String)} pero con otra extension, por ejemplo
+     * {@link CompressedContainer#EXTENSION}.
+     *
+     * @param inputPath Ruta del archivo de entrada, de la que se toma el nombre.
+     * @param suffix Un sufijo que se anadira al nombre del archivo de salida.
+     * @param extension La extension del archivo, con el punto.
+     * @return La ruta de salida generada como una cadena.
+     */
+    public String generateOutputPath(String inputPath, String suffix, String extension){
+        createDirectories();
+        return String.format("%s%s%s_%s_%s%s", outputDirectory, File.separator, suffix, baseName(inputPath),
+                uniqueId(), extension);
+    }
+
+    /**
+     * Genera la ruta de la salida de {@link LogFollower} para un archivo de entrada, de la forma
+     * {outputDirectory}/{suffix}_{nombre}.txt. A diferencia de {@link #generateOutputPath(String, String)} no lleva un
+     * identificador unico: cada ejecucion sobre la misma entrada continua la misma salida.
+     *
+     * @param inputPath Ruta del archivo de entrada, de la que se toma el nombre.
+     * @param suffix Un sufijo que se anadira al nombre del archivo de salida.
+     * @return La ruta de salida como una cadena.
+     */
+    public String generateFollowPath(String inputPath, String suffix) {
+        createDirectories();
+        return String.format("%s%s%s_%s.txt", outputDirectory, File.separator, suffix, baseName(inputPath));
+    }
+
+    /**
+     * Genera un identificador unico para nombrar archivos: la fecha y hora actual, el proceso y un contador. El
+     * contador es atomico, asi que los hilos no se bloquean entre si, y el proceso evita que dos ejecuciones del
+     * programa a la vez generen el mismo nombre.
+     *
+     * @return Un identificador de la forma {@code yyyyMMdd-HHmmss-proceso-contador}.
+     */
+    public static String uniqueId() {
+        return LocalDateTime.now().format(TIMESTAMP) + "-" + Process.ID + "-" + SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * El identificador del proceso, que se obtiene la primera vez que se genera un identificador: cargar
+     * {@link ProcessHandle} cuesta varios milisegundos al arrancar y no hace falta si no se escriben archivos.
+     */
+    private static final class Process {
+        private static final long ID = ProcessHandle.current().pid();
+    }
+
+    /**
+     * Genera la ruta del temporal en el que se escribe un archivo antes de moverlo a su ruta con
+     * {@link #moveIntoPlace(Path, Path)}. Esta en la misma carpeta, para que el movimiento sea atomico.
+     *
+     * @param target La ruta final del archivo.
+     * @return La ruta del temporal, unica entre hilos y procesos.
+     */
+    static Path temporaryPath(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "." + Process.ID + "-" + SEQUENCE.incrementAndGet()
+                + ".tmp");
+    }
+
+    /**
+     * Mueve un temporal ya completo a su ruta final, reemplazando el archivo que hubiera. El movimiento es atomico
+     * si el sistema de archivos lo permite.
+     *
+     * @param temporary El temporal.
+     * @param target La ruta final.
+     * @throws IOException Si no se puede mover.
+     */
+    static void moveIntoPlace(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Borra un temporal que no llego a moverse, ignorando los errores.
+     *
+     * @param temporary El temporal.
+     */
+    static void deleteQuietly(Path temporary) {
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            // El temporal queda oculto en la carpeta de salida
+        }
+    }
+
+    /**
+     * Obtiene el nombre de un archivo sin carpetas ni extension, con solo letras, digitos, guiones y puntos.
+     */
+    private static String baseName(String inputPath) {
+        String name = Paths.get(inputPath).getFileName() != null ? Paths.get(inputPath).getFileName().toString() : "";
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        name = name.replaceAll("[^\\p{L}\\p{N}._-]", "_");
+        if (name.length() > MAX_BASE_NAME) {
+            name = name.substring(0, MAX_BASE_NAME);
+        }
+        return name.isEmpty() ? "archivo" : name;
     }
-}
\ No newline at end of file
+}
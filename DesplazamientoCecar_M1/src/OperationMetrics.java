@@ -0,0 +1,255 @@
+import java.nio.CharBuffer;
+import java.util.Locale;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * La clase {@code OperationMetrics} mide una operacion de cifrado o descifrado: el tiempo de lectura, de
+ * desplazamiento y de escritura, los caracteres procesados, los que no estan en el {@link Alphabet} (y se copian sin
+ * cambios) y los bytes por segundo.
+ *
+ * <p>Las mediciones se publican al terminar cada operacion como un {@link CipherEvent} de JFR, si JFR esta
+ * grabando, y en el {@link MetricsSink} instalado con {@link #setSink(MetricsSink)}. Si no hay ninguno de los dos,
+ * {@link #start(String, String, Alphabet)} devuelve {@code null} y los metodos que reciben las mediciones no hacen
+ * nada mas que comprobarlo, por lo que medir desactivado no cuesta nada dentro de los bucles.</p>
+ *
+ * <pre>
+ * OperationMetrics metrics = OperationMetrics.start("cifrar", inputPath, alphabet);   // null si esta desactivado
+ * boolean ok = fileHandler.transformFile(inputPath, outputPath, transform, metrics);
+ * OperationMetrics.finish(metrics, ok);
+ * </pre>
+ *
+ * <p>Una instancia pertenece a una sola operacion y no es segura entre hilos.</p>
+ */
+public class OperationMetrics {
+    private static volatile MetricsSink sink;
+
+    private final String operation;
+    private final String path;
+    private final Alphabet alphabet;
+    private final CipherEvent event;
+    private final long startNanos = System.nanoTime();
+    private long mark = startNanos;
+    private long readNanos;
+    private long shiftNanos;
+    private long writeNanos;
+    private long totalNanos;
+    private long characters;
+    private long passedThrough;
+    private long bytes;
+    private boolean success;
+
+    private OperationMetrics(String operation, String path, Alphabet alphabet, CipherEvent event) {
+        this.operation = operation;
+        this.path = path;
+        this.alphabet = alphabet;
+        this.event = event;
+    }
+
+    /**
+     * Instala el destino de las mediciones, o lo quita con {@code null}.
+     *
+     * @param metricsSink El destino de las mediciones.
+     */
+    public static void setSink(MetricsSink metricsSink) {
+        sink = metricsSink;
+    }
+
+    /**
+     * Empieza a medir una operacion.
+     *
+     * @param operation El nombre de la operacion, por ejemplo {@code "cifrar"}.
+     * @param path La entrada de la operacion (una ruta o {@code "-"} para la entrada estandar).
+     * @param alphabet El alfabeto del cifrado, para contar los caracteres que no pertenecen a el.
+     * @return Las mediciones de la operacion, o {@code null} si no hay ningun destino activo.
+     */
+    public static OperationMetrics start(String operation, String path, Alphabet alphabet) {
+        // Sin JFR no se carga CipherEvent: cargar la primera clase de evento inicia JFR, que tarda cientos de
+        // milisegundos y en una ejecucion corta es la mayor parte del arranque
+        CipherEvent event = FlightRecorder.isInitialized() ? new CipherEvent() : null;
+        boolean jfr = event != null && event.isEnabled();
+        if (sink == null && !jfr) {
+            return null;
+        }
+        if (jfr) {
+            event.begin();
+        }
+        return new OperationMetrics(operation, path, alphabet, jfr ? event : null);
+    }
+
+    /**
+     * Termina de medir una operacion y publica las mediciones.
+     *
+     * @param metrics Las mediciones, o {@code null} si la medicion esta desactivada.
+     * @param success {@code true} si la operacion termino sin errores.
+     */
+    public static void finish(OperationMetrics metrics, boolean success) {
+        if (metrics == null) {
+            return;
+        }
+        metrics.success = success;
+        metrics.totalNanos = System.nanoTime() - metrics.startNanos;
+        if (metrics.event != null) {
+            CipherEvent event = metrics.event;
+            event.end();
+            event.operation = metrics.operation;
+            event.path = metrics.path;
+            event.success = success;
+            event.readTime = metrics.readNanos;
+            event.shiftTime = metrics.shiftNanos;
+            event.writeTime = metrics.writeNanos;
+            event.characters = metrics.characters;
+            event.passedThrough = metrics.passedThrough;
+            event.bytes = metrics.bytes;
+            event.bytesPerSecond = (long) metrics.getBytesPerSecond();
+            event.commit();
+        }
+        MetricsSink current = sink;
+        if (current != null) {
+            current.record(metrics);
+        }
+    }
+
+    /**
+     * Suma a la lectura el tiempo transcurrido desde la ultima fase.
+     */
+    public void endRead() {
+        long now = System.nanoTime();
+        readNanos += now - mark;
+        mark = now;
+    }
+
+    /**
+     * Suma al desplazamiento el tiempo transcurrido desde la ultima fase.
+     */
+    public void endShift() {
+        long now = System.nanoTime();
+        shiftNanos += now - mark;
+        mark = now;
+    }
+
+    /**
+     * Suma a la escritura el tiempo transcurrido desde la ultima fase.
+     */
+    public void endWrite() {
+        long now = System.nanoTime();
+        writeNanos += now - mark;
+        mark = now;
+    }
+
+    /**
+     * Cuenta los caracteres restantes de un bloque y los que no pertenecen al alfabeto, antes de transformarlo. El
+     * tiempo del recuento no se suma a ninguna fase.
+     *
+     * @param buffer El bloque; su posicion no cambia.
+     */
+    public void count(CharBuffer buffer) {
+        if (alphabet == null) {
+            characters += buffer.remaining();
+        } else {
+            for (int i = 0; i < buffer.remaining(); characters++) {     // Por code point, como el alfabeto
+                int codePoint = Character.codePointAt(buffer, i);
+                i += Character.charCount(codePoint);
+                if (!alphabet.isLetter(codePoint)) {
+                    passedThrough++;
+                }
+            }
+        }
+        mark = System.nanoTime();
+    }
+
+    /**
+     * Suma bytes leidos de la entrada.
+     *
+     * @param count El numero de bytes.
+     */
+    public void addBytes(long count) {
+        bytes += count;
+    }
+
+    /**
+     * @return El nombre de la operacion.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return La entrada de la operacion.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return {@code true} si la operacion termino sin errores.
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return El tiempo de lectura (y decodificacion) en nanosegundos.
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * @return El tiempo de desplazamiento (la transformacion de los caracteres) en nanosegundos.
+     */
+    public long getShiftNanos() {
+        return shiftNanos;
+    }
+
+    /**
+     * @return El tiempo de escritura (y codificacion) en nanosegundos.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return El tiempo total de la operacion en nanosegundos, incluido lo que no es lectura, desplazamiento ni
+     *         escritura (abrir y cerrar archivos, contar caracteres...).
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return Los caracteres procesados.
+     */
+    public long getCharacters() {
+        return characters;
+    }
+
+    /**
+     * @return Los caracteres que no pertenecen al alfabeto y se copiaron sin cambios.
+     */
+    public long getPassedThrough() {
+        return passedThrough;
+    }
+
+    /**
+     * @return Los bytes leidos de la entrada.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Los bytes leidos por segundo, respecto del tiempo total.
+     */
+    public double getBytesPerSecond() {
+        return totalNanos == 0 ? 0 : bytes * 1e9 / totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%s %s: %s, total %.2f ms (lectura %.2f, desplazamiento %.2f, escritura %.2f), %d caracteres "
+                        + "(%d fuera del alfabeto), %d bytes, %.2f MB/s",
+                operation, path, success ? "ok" : "error", totalNanos / 1e6, readNanos / 1e6, shiftNanos / 1e6,
+                writeNanos / 1e6, characters, passedThrough, bytes, getBytesPerSecond() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * La clase {@code PipelinedFileCipher} transforma un archivo UTF-8 solapando la lectura, el desplazamiento y la
+ * escritura, para que el disco y el procesador trabajen a la vez en archivos grandes.
+ *
+ * <p>{@link MyFileHandler#transformFile(String, String, Consumer)} lee un bloque, lo transforma y lo escribe, y solo
+ * entonces lee el siguiente: mientras se desplaza el disco esta parado, y mientras se lee o escribe el procesador
+ * espera. Aqui la entrada y la salida se abren como {@link AsynchronousFileChannel} con dos buffers cada una:
+ * mientras se transforma el bloque N ya se esta leyendo el N+1 y escribiendo el N-1.</p>
+ *
+ * <pre>
+ * lectura:        [N+1] [N+2] ...
+ * desplazamiento: [ N ] [N+1] ...
+ * escritura:      [N-1] [ N ] ...
+ * </pre>
+ *
+ * <p>El resultado es el mismo que el de {@code transformFile}, incluidos los cifrados cuya clave depende de la
+ * posicion del caracter: la transformacion recibe los bloques en orden y en un solo hilo. Una secuencia UTF-8 que
+ * queda partida entre dos lecturas se completa con la siguiente, asi que la transformacion nunca recibe medio
+ * caracter. Como en {@code transformFile}, la salida se escribe en un temporal que solo reemplaza al archivo de
+ * salida si el proceso termina bien.</p>
+ */
+public class PipelinedFileCipher {
+    private static final int CHUNK_SIZE = 1 << 20;      // Bytes por lectura
+    private static final int CARRY = 3;                 // Bytes de una secuencia UTF-8 partida que pasan al bloque siguiente
+
+    /**
+     * Transforma un archivo solapando la lectura, la transformacion y la escritura.
+     *
+     * @param inputPath La ruta del archivo que se leera.
+     * @param outputPath La ruta del archivo donde se escribira el resultado.
+     * @param transform La transformacion que se aplica, en el mismo lugar, a los caracteres restantes de cada bloque.
+     * @param metrics Las mediciones de la operacion, o {@code null} para no medir. La lectura y la escritura incluyen
+     *                la decodificacion y la codificacion y solo el tiempo que se espera al disco, que es lo que no se
+     *                pudo solapar.
+     * @return {@code true} si el archivo se proceso completo, o {@code false} si ocurre un error.
+     */
+    public boolean transform(String inputPath, String outputPath, Consumer<CharBuffer> transform,
+                             OperationMetrics metrics) {
+        Path target = Paths.get(outputPath);
+        Path temporary = MyFileHandler.temporaryPath(target);
+        try {
+            try (AsynchronousFileChannel input = AsynchronousFileChannel.open(Paths.get(inputPath), StandardOpenOption.READ);
+                 AsynchronousFileChannel output = AsynchronousFileChannel.open(temporary, StandardOpenOption.WRITE,
+                         StandardOpenOption.CREATE_NEW)) {
+                new Pipeline(input, output, transform, metrics).run();
+            }
+            MyFileHandler.moveIntoPlace(temporary, target);
+        } catch (IOException e) {
+            System.err.println("Error al transformar el archivo: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            MyFileHandler.deleteQuietly(temporary);             // Ya no existe si se movio
+        }
+        if (metrics != null) {
+            metrics.addBytes(Paths.get(inputPath).toFile().length());
+        }
+        return true;
+    }
+
+    /**
+     * El estado de una transformacion: los buffers de cada etapa y las operaciones pendientes.
+     */
+    private static final class Pipeline {
+        private final AsynchronousFileChannel input;
+        private final AsynchronousFileChannel output;
+        private final Consumer<CharBuffer> transform;
+        private final OperationMetrics metrics;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)                // Como InputStreamReader
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)                // Como OutputStreamWriter
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // Cada lectura empieza en CARRY para poder anteponerle lo que sobro del bloque anterior
+        private final ByteBuffer[] reads = {ByteBuffer.allocate(CARRY + CHUNK_SIZE), ByteBuffer.allocate(CARRY + CHUNK_SIZE)};
+        // Un caracter de hasta 3 bytes por byte leido como maximo
+        private final ByteBuffer[] writes = {ByteBuffer.allocate(3 * (CARRY + CHUNK_SIZE)), ByteBuffer.allocate(3 * (CARRY + CHUNK_SIZE))};
+        private final CharBuffer chars = CharBuffer.allocate(CARRY + CHUNK_SIZE);
+        private final byte[] carry = new byte[CARRY];
+        private int carried;
+        private long readPosition;
+        private long writePosition;
+        private Future<Integer> pendingWrite;
+        private ByteBuffer pendingBuffer;
+
+        private Pipeline(AsynchronousFileChannel input, AsynchronousFileChannel output,
+                         Consumer<CharBuffer> transform, OperationMetrics metrics) {
+            this.input = input;
+            this.output = output;
+            this.transform = transform;
+            this.metrics = metrics;
+        }
+
+        private void run() throws IOException, InterruptedException {
+            int current = 0;
+            Future<Integer> pendingRead = read(reads[current]);
+            while (true) {
+                int read = await(pendingRead);
+                if (read == -1) {
+                    break;
+                }
+                ByteBuffer bytes = reads[current];
+                readPosition += read;
+                current ^= 1;
+                pendingRead = read(reads[current]);                 // Lee N+1 mientras se transforma N
+
+                bytes.flip();
+                bytes.position(CARRY - carried);                    // Antepone los bytes que sobraron
+                bytes.put(carry, 0, carried);
+                bytes.position(CARRY - carried);
+                chars.clear();
+                decoder.decode(bytes, chars, false);
+                carried = bytes.remaining();                        // Una secuencia partida por la lectura
+                bytes.get(carry, 0, carried);
+                if (metrics != null) {
+                    metrics.endRead();                              // La espera y la decodificacion
+                }
+                shiftAndWrite();
+            }
+            ByteBuffer rest = ByteBuffer.wrap(carry, 0, carried);   // Secuencia incompleta al final del archivo
+            chars.clear();
+            decoder.decode(rest, chars, true);
+            decoder.flush(chars);
+            shiftAndWrite();
+            awaitWrite();
+            if (metrics != null) {
+                metrics.endWrite();
+            }
+        }
+
+        /**
+         * Transforma los caracteres decodificados, los codifica en el buffer de salida libre y empieza a escribirlo
+         * cuando termina la escritura anterior.
+         */
+        private void shiftAndWrite() throws IOException, InterruptedException {
+            chars.flip();
+            if (!chars.hasRemaining()) {
+                return;
+            }
+            if (metrics != null) {
+                metrics.count(chars);
+            }
+            transform.accept(chars);
+            if (metrics != null) {
+                metrics.endShift();
+            }
+            ByteBuffer encoded = writes[pendingBuffer == writes[0] ? 1 : 0];
+            encoded.clear();
+            encoder.reset();
+            encoder.encode(chars, encoded, true);
+            encoder.flush(encoded);
+            encoded.flip();
+            awaitWrite();                                           // La escritura de N-1 debe haber terminado
+            if (metrics != null) {
+                metrics.endWrite();                                 // La codificacion y la espera
+            }
+            pendingBuffer = encoded;
+            pendingWrite = output.write(encoded, writePosition);
+        }
+
+        /**
+         * Espera a que termine la escritura pendiente, repitiendola si se escribio solo una parte.
+         */
+        private void awaitWrite() throws IOException, InterruptedException {
+            while (pendingWrite != null) {
+                writePosition += await(pendingWrite);
+                pendingWrite = pendingBuffer.hasRemaining() ? output.write(pendingBuffer, writePosition) : null;
+            }
+        }
+
+        private Future<Integer> read(ByteBuffer buffer) {
+            buffer.clear().position(CARRY);
+            return input.read(buffer, readPosition);
+        }
+
+        private static int await(Future<Integer> operation) throws IOException, InterruptedException {
+            try {
+                return operation.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * La clase {@code PropertiesStore} guarda las propiedades de cada cifrado (ruta original, ruta cifrada y
+ * desplazamiento) en un unico registro binario de solo agregado, {@code Properties/properties.db}, en lugar de un
+ * archivo {@code proper_*.txt} por cifrado.
+ *
+ * <p>Al abrirse se lee el registro completo y se construye en memoria un indice por ruta cifrada, por ruta original
+ * y por nombre del archivo cifrado, de modo que buscar las propiedades de un archivo cifrado es una consulta a un
+ * {@link HashMap} sin recorrer la carpeta {@code Properties/}. Si una ruta aparece varias veces gana el registro mas
+ * reciente. Las rutas se comparan absolutas y normalizadas, aceptando tanto {@code /} como {@code \}. El nombre del
+ * archivo solo se usa si ningun otro archivo cifrado del almacen tiene el mismo nombre.</p>
+ *
+ * <p>Formato del archivo: la cabecera {@code MAGIC} seguida de registros</p>
+ * <pre>
+ * int longitud | utf rutaOriginal | utf rutaCifrada | int desplazamiento | int crc32
+ * </pre>
+ * <p>donde {@code longitud} es el tamano de los campos intermedios y {@code crc32} su suma de verificacion. Varios
+ * procesos pueden usar el mismo almacen a la vez: cada registro se escribe al final del archivo con un
+ * {@link FileLock} exclusivo, y antes de escribirlo se leen los registros que otros procesos agregaron desde la
+ * ultima vez. Como nadie escribe sin el bloqueo, un registro incompleto al final del archivo es de un proceso que
+ * termino mientras lo escribia y se descarta; un registro cuya suma no coincide se salta sin descartar los
+ * siguientes.</p>
+ *
+ * <p>La primera vez que se crea el almacen se importan los {@code proper_*.txt} que ya existan en su carpeta.</p>
+ */
+public class PropertiesStore {
+    private static final int MAGIC = 0x43505331;            // "CPS1"
+    private static final int MAX_RECORD = 2 * 65535 + 4;     // Dos cadenas UTF y un entero
+
+    private static final String ORIGINAL_PREFIX = "Original File Path: ";
+    private static final String ENCRYPTED_PREFIX = "Encrypted File Path: ";
+    private static final String SHIFT_PREFIX = "Desplazamiento: ";
+    private static final Object FILE_LOCK = new Object();   // FileLock no admite dos bloqueos en la misma JVM
+
+
+    private final Path storePath;
+    private final Map<String, Entry> byEncrypted = new HashMap<>();
+    private final Map<String, Entry> byOriginal = new HashMap<>();
+    private final Map<String, Entry> byFileName = new HashMap<>();
+    private final Set<String> repeatedFileNames = new HashSet<>();
+    private FileChannel channel;                            // null si no se pudo abrir el almacen
+    private long end;                                       // Hasta donde se leyeron los registros
+
+    /**
+     * Propiedades de un archivo cifrado.
+     */
+    public static final class Entry {
+        private final String originalPath;
+        private final String encryptedPath;
+        private final int shift;
+
+        public Entry(String originalPath, String encryptedPath, int shift) {
+            this.originalPath = originalPath;
+            this.encryptedPath = encryptedPath;
+            this.shift = shift;
+        }
+
+        public String getOriginalPath() {
+            return originalPath;
+        }
+
+        public String getEncryptedPath() {
+            return encryptedPath;
+        }
+
+        public int getShift() {
+            return shift;
+        }
+    }
+
+    /**
+     * Constructor de la clase {@code PropertiesStore} con el archivo por defecto {@code Properties/properties.db}.
+     */
+    public PropertiesStore() {
+        this(Paths.get("Properties").resolve("properties.db"));
+    }
+
+    /**
+     * Constructor de la clase {@code PropertiesStore}. Abre (o crea) el archivo del almacen y carga su indice.
+     *
+     * @param storePath La ruta del archivo del almacen.
+     */
+    public PropertiesStore(Path storePath) {
+        this.storePath = storePath;
+        try {
+            if (storePath.getParent() != null) {
+                Files.createDirectories(storePath.getParent());
+            }
+            channel = FileChannel.open(storePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            synchronized (FILE_LOCK) {
+                FileLock lock = channel.lock();
+                try {
+                    if (channel.size() == 0) {                  // Lo crea este proceso
+                        channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC), 0);
+                        end = Integer.BYTES;
+                        importLegacyFiles();
+                    } else {
+                        load();
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error al abrir el almacen de propiedades: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Agrega al final del almacen las propiedades de un archivo cifrado y actualiza el indice.
+     *
+     * @param originalPath La ruta del archivo original.
+     * @param encryptedPath La ruta del archivo cifrado.
+     * @param shift El desplazamiento utilizado en el cifrado.
+     * @return {@code true} si se guardaron las propiedades, o {@code false} si hubo un error.
+     */
+    public synchronized boolean append(String originalPath, String encryptedPath, int shift) {
+        if (channel == null) {
+            System.err.println("Error: El almacen de propiedades no esta disponible.");
+            return false;
+        }
+        try {
+            ByteBuffer record = record(originalPath, encryptedPath, shift);
+            synchronized (FILE_LOCK) {
+                FileLock lock = channel.lock();
+                try {
+                    readRecords();                              // Los registros de otros procesos van antes
+                    write(record);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error al guardar los datos: " + e.getMessage());
+            return false;
+        }
+        index(new Entry(originalPath, encryptedPath, shift));
+        return true;
+    }
+
+    /**
+     * Codifica un registro: su longitud, sus campos y la suma de verificacion de los campos.
+     */
+    private static ByteBuffer record(String originalPath, String encryptedPath, int shift) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeUTF(originalPath);
+        data.writeUTF(encryptedPath);
+        data.writeInt(shift);
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length + Integer.BYTES);
+        record.putInt(bytes.length).put(bytes).putInt((int) crc.getValue()).flip();
+        return record;
+    }
+
+    /**
+     * Escribe un registro completo al final del archivo. Se llama con el bloqueo del archivo.
+     */
+    private void write(ByteBuffer record) throws IOException {
+        while (record.hasRemaining()) {
+            end += channel.write(record, end);
+        }
+    }
+
+    /**
+     * Busca las propiedades de un archivo cifrado por su ruta, o por su nombre si no se encuentra la ruta y ningun
+     * otro archivo cifrado del almacen se llama igual.
+     *
+     * @param encryptedPath La ruta (o el nombre) del archivo cifrado.
+     * @return Las propiedades mas recientes de ese archivo, o {@code null} si no estan en el almacen o el nombre es
+     *         ambiguo.
+     */
+    public synchronized Entry findByEncrypted(String encryptedPath) {
+        Entry entry = byEncrypted.get(key(encryptedPath));
+        if (entry != null) {
+            return entry;
+        }
+        String name = fileName(encryptedPath);
+        return repeatedFileNames.contains(name) ? null : byFileName.get(name);
+    }
+
+    /**
+     * Busca las propiedades del ultimo cifrado de un archivo original.
+     *
+     * @param originalPath La ruta del archivo original.
+     * @return Las propiedades mas recientes, o {@code null} si ese archivo no se ha cifrado.
+     */
+    public synchronized Entry findByOriginal(String originalPath) {
+        return byOriginal.get(key(originalPath));
+    }
+
+    /**
+     * @return El numero de archivos cifrados distintos en el almacen.
+     */
+    public synchronized int size() {
+        return byEncrypted.size();
+    }
+
+    /**
+     * @return La ruta del archivo del almacen.
+     */
+    public Path getStorePath() {
+        return storePath;
+    }
+
+    /**
+     * Lee las propiedades de un archivo {@code proper_*.txt} con el formato anterior:
+     * <pre>
+     * Original File Path: original.txt
+     * Encrypted File Path: encrypted.txt
+     * Desplazamiento: 3
+     * </pre>
+     * Acepta saltos de linea {@code \n} y {@code \r\n}, independientemente del sistema operativo.
+     *
+     * @param content El contenido del archivo de propiedades.
+     * @return Las propiedades, o {@code null} si falta la ruta cifrada o el desplazamiento no es valido.
+     */
+    public static Entry parseLegacy(String content) {
+        String originalPath = null;
+        String encryptedPath = null;
+        int shift = 0;
+        for (String line : (Iterable<String>) content.lines()::iterator) {
+            if (line.startsWith(ORIGINAL_PREFIX)) {
+                originalPath = line.substring(ORIGINAL_PREFIX.length()).trim();
+            } else if (line.startsWith(ENCRYPTED_PREFIX)) {
+                encryptedPath = line.substring(ENCRYPTED_PREFIX.length()).trim();
+            } else if (line.startsWith(SHIFT_PREFIX)) {
+                try {
+                    shift = Integer.parseInt(line.substring(SHIFT_PREFIX.length()).trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return encryptedPath == null ? null : new Entry(originalPath, encryptedPath, shift);
+    }
+
+    /**
+     * Comprueba la cabecera del archivo y lee todos sus registros. Se llama con el bloqueo del archivo.
+     */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        channel.read(header, 0);
+        if (header.position() < Integer.BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException("El archivo no es un almacen de propiedades: " + storePath);
+        }
+        end = Integer.BYTES;
+        readRecords();
+    }
+
+    /**
+     * Lee los registros agregados desde {@code end} hasta el final del archivo y los anade al indice. Se llama con el
+     * bloqueo del archivo, por lo que un registro incompleto al final no se esta escribiendo: se descarta, truncando
+     * el archivo, para que los siguientes registros se agreguen detras del ultimo registro completo.
+     */
+    private void readRecords() throws IOException {
+        long size = channel.size();
+        if (size <= end) {
+            return;
+        }
+        long position = end;
+        int skipped = 0;
+        // Sin cerrar el flujo, que cerraria el canal
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(end))));
+        while (size - position >= 2 * Integer.BYTES) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD || size - position < 2 * Integer.BYTES + length) {
+                break;                                      // Incompleto, o sin forma de saber donde empieza el siguiente
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            int storedCrc = in.readInt();
+            position += 2 * Integer.BYTES + length;
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != storedCrc) {
+                skipped++;                                  // La longitud sigue siendo valida: se salta solo este
+                continue;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+            index(new Entry(record.readUTF(), record.readUTF(), record.readInt()));
+        }
+        end = position;
+        if (skipped > 0) {
+            System.err.println("Aviso: Se omitieron " + skipped + " registros danados del almacen de propiedades.");
+        }
+        if (end < size) {
+            System.err.println("Aviso: Se descarto un registro incompleto del almacen de propiedades.");
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Importa los archivos {@code proper_*.txt} de la carpeta del almacen, del mas antiguo al mas reciente. Se llama
+     * con el bloqueo del archivo.
+     */
+    private void importLegacyFiles() throws IOException {
+        Path directory = storePath.toAbsolutePath().getParent();
+        List<Path> legacyFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            legacyFiles = files.filter(file -> file.getFileName().toString().matches("proper_.*\\.txt"))
+                    .sorted(Comparator.comparing(file -> file.toFile().lastModified()))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : legacyFiles) {
+            Entry entry = parseLegacy(Files.readString(file));
+            if (entry != null) {
+                String originalPath = entry.getOriginalPath() == null ? "" : entry.getOriginalPath();
+                write(record(originalPath, entry.getEncryptedPath(), entry.getShift()));
+                index(new Entry(originalPath, entry.getEncryptedPath(), entry.getShift()));
+            }
+        }
+    }
+
+    private void index(Entry entry) {
+        String encryptedKey = key(entry.getEncryptedPath());
+        byEncrypted.put(encryptedKey, entry);
+        String name = fileName(entry.getEncryptedPath());
+        Entry previous = byFileName.put(name, entry);
+        if (previous != null && !key(previous.getEncryptedPath()).equals(encryptedKey)) {
+            repeatedFileNames.add(name);
+        }
+        if (!entry.getOriginalPath().isEmpty()) {
+            byOriginal.put(key(entry.getOriginalPath()), entry);
+        }
+    }
+
+    /**
+     * Clave del indice: la ruta absoluta y normalizada, con {@code /} como separador.
+     */
+    private static String key(String path) {
+        String portable = path.replace('\\', '/');
+        try {
+            return Paths.get(portable).toAbsolutePath().normalize().toString().replace('\\', '/');
+        } catch (RuntimeException e) {
+            return portable;                                // Ruta no valida en este sistema: se compara tal cual
+        }
+    }
+
+    private static String fileName(String path) {
+        String portable = path.replace('\\', '/');
+        return portable.substring(portable.lastIndexOf('/') + 1);
+    }
+
+    private void closeQuietly() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // El almacen ya no se usara
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * La clase {@code TableCipherEngine} es el nucleo comun de los motores de cifrado: aplica una secuencia de tablas
+ * de traduccion precalculadas, una por posicion del periodo de la clave.
+ *
+ * <p>Con una sola tabla cada caracter se sustituye por {@code tabla[caracter]}. Con {@code n} tablas el caracter en
+ * la posicion {@code p} del texto usa la tabla {@code p % n}; el indice de la tabla avanza con cada caracter,
+ * pertenezca o no al alfabeto, por lo que no se calcula ningun modulo dentro del bucle.</p>
+ *
+ * <p>En los alfabetos de caracteres suplementarios (ver {@link Alphabet#isSupplementary()}) las tablas son por code
+ * point, de dos niveles como las de {@link Alphabet#getSupplementaryShiftTable(int)}: cada par de surrogates se
+ * traduce como un solo caracter y usa la tabla de la posicion de su primer {@code char}. Un surrogate sin pareja
+ * (por ejemplo, al final de un rango) se deja igual.</p>
+ */
+public class TableCipherEngine implements CipherEngine {
+    private final char[][] encryptTables;
+    private final char[][] decryptTables;
+    private final int[][][] encryptCodePointTables;
+    private final int[][][] decryptCodePointTables;
+
+    /**
+     * Constructor de la clase {@code TableCipherEngine}.
+     *
+     * @param encryptTables Las tablas de cifrado, una por posicion del periodo.
+     * @param decryptTables Las tablas de descifrado, en el mismo orden.
+     * @throws IllegalArgumentException Si no hay tablas o no hay el mismo numero de cada tipo.
+     */
+    protected TableCipherEngine(char[][] encryptTables, char[][] decryptTables) {
+        this(encryptTables, decryptTables, null, null);
+    }
+
+    /**
+     * Constructor de la clase {@code TableCipherEngine} para alfabetos de cualquier tipo: si hay tablas por code
+     * point se usan en lugar de las tablas de {@code char}.
+     *
+     * @param encryptTables Las tablas de cifrado, una por posicion del periodo.
+     * @param decryptTables Las tablas de descifrado, en el mismo orden.
+     * @param encryptCodePointTables Las tablas de cifrado por code point, o {@code null} si el alfabeto es del plano
+     *                               basico.
+     * @param decryptCodePointTables Las tablas de descifrado por code point, o {@code null}.
+     * @throws IllegalArgumentException Si no hay tablas o no hay el mismo numero de cada tipo.
+     */
+    protected TableCipherEngine(char[][] encryptTables, char[][] decryptTables, int[][][] encryptCodePointTables,
+                                int[][][] decryptCodePointTables) {
+        if (encryptCodePointTables != null) {
+            if (encryptCodePointTables.length == 0 || decryptCodePointTables == null
+                    || encryptCodePointTables.length != decryptCodePointTables.length) {
+                throw new IllegalArgumentException("Se necesita el mismo numero (no nulo) de tablas de cifrado y descifrado.");
+            }
+            encryptTables = null;                           // Las tablas de char serian la identidad
+            decryptTables = null;
+        } else if (encryptTables.length == 0 || encryptTables.length != decryptTables.length) {
+            throw new IllegalArgumentException("Se necesita el mismo numero (no nulo) de tablas de cifrado y descifrado.");
+        }
+        this.encryptTables = encryptTables;
+        this.decryptTables = decryptTables;
+        this.encryptCodePointTables = encryptCodePointTables;
+        this.decryptCodePointTables = decryptCodePointTables;
+    }
+
+    /**
+     * Constructor de la clase {@code TableCipherEngine} a partir de permutaciones de los indices del alfabeto, una
+     * por posicion del periodo. Las tablas de descifrado son las inversas, y se construyen tablas de {@code char} o
+     * por code point segun el tipo de alfabeto. Si una misma funcion aparece varias veces su tabla se construye una
+     * sola vez.
+     *
+     * <p>En un alfabeto de caracteres suplementarios cada caracter ocupa dos posiciones del texto, por lo que cada
+     * tabla se repite dos veces seguidas en el periodo para que el texto use todas las permutaciones.</p>
+     *
+     * @param alphabet El alfabeto sobre el que se sustituyen los caracteres.
+     * @param indexMappings Las permutaciones de los indices del alfabeto.
+     * @throws IllegalArgumentException Si no hay ninguna permutacion.
+     */
+    protected TableCipherEngine(Alphabet alphabet, IntUnaryOperator... indexMappings) {
+        this(new Tables(alphabet, indexMappings));
+    }
+
+    private TableCipherEngine(Tables tables) {
+        this(tables.encrypt, tables.decrypt, tables.encryptCodePoints, tables.decryptCodePoints);
+    }
+
+    @Override
+    public void encrypt(char[] chars, int from, int to, long position) {
+        if (encryptTables == null) {
+            translate(chars, from, to, position, encryptCodePointTables);
+            return;
+        }
+        translate(chars, from, to, position, encryptTables);
+    }
+
+    @Override
+    public void decrypt(char[] chars, int from, int to, long position) {
+        if (decryptTables == null) {
+            translate(chars, from, to, position, decryptCodePointTables);
+            return;
+        }
+        translate(chars, from, to, position, decryptTables);
+    }
+
+    @Override
+    public char[] getEncryptTable() {
+        return encryptTables != null && encryptTables.length == 1 ? encryptTables[0] : null;
+    }
+
+    @Override
+    public char[] getDecryptTable() {
+        return decryptTables != null && decryptTables.length == 1 ? decryptTables[0] : null;
+    }
+
+    /**
+     * Invierte una tabla de traduccion que es una permutacion de los caracteres.
+     *
+     * @param table La tabla de cifrado.
+     * @return La tabla que deshace la traduccion de {@code table}.
+     */
+    protected static char[] invert(char[] table) {
+        char[] inverse = new char[table.length];
+        for (int c = 0; c < table.length; c++) {
+            inverse[table[c]] = (char) c;
+        }
+        return inverse;
+    }
+
+    /**
+     * Invierte una tabla de traduccion por code point que es una permutacion de los code points.
+     *
+     * @param table La tabla de cifrado; las paginas {@code null} son la identidad.
+     * @return La tabla que deshace la traduccion de {@code table}.
+     */
+    protected static int[][] invert(int[][] table) {
+        int[][] inverse = new int[table.length][];
+        for (int page = 0; page < table.length; page++) {
+            if (table[page] == null) {
+                continue;
+            }
+            for (int i = 0; i < table[page].length; i++) {
+                int target = table[page][i];
+                int targetPage = target >> 8;
+                if (inverse[targetPage] == null) {
+                    inverse[targetPage] = new int[256];
+                    for (int j = 0; j < 256; j++) {
+                        inverse[targetPage][j] = (targetPage << 8) | j;   // Empieza como la identidad
+                    }
+                }
+                inverse[targetPage][target & 0xFF] = (page << 8) | i;
+            }
+        }
+        return inverse;
+    }
+
+    private static void translate(char[] chars, int from, int to, long position, char[][] tables) {
+        if (tables.length == 1) {                           // Cifrado de una sola tabla (Cesar, afin...)
+            char[] table = tables[0];
+            for (int i = from; i < to; i++) {
+                chars[i] = table[chars[i]];
+            }
+            return;
+        }
+        int period = tables.length;
+        int k = Math.floorMod(position, period);
+        for (int i = from; i < to; i++) {
+            chars[i] = tables[k][chars[i]];
+            if (++k == period) {
+                k = 0;
+            }
+        }
+    }
+
+    private static void translate(char[] chars, int from, int to, long position, int[][][] tables) {
+        int period = tables.length;
+        int k = Math.floorMod(position, period);
+        for (int i = from; i < to; i++) {
+            char high = chars[i];
+            if (Character.isHighSurrogate(high) && i + 1 < to && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(high, chars[i + 1]);
+                int[] page = tables[k][codePoint >> 8];
+                if (page != null) {
+                    Character.toChars(page[codePoint & 0xFF], chars, i);
+                }
+                i++;                                        // El par ocupa dos posiciones del periodo
+                if (++k == period) {
+                    k = 0;
+                }
+            }
+            if (++k == period) {
+                k = 0;
+            }
+        }
+    }
+
+    /**
+     * Las tablas construidas a partir de las permutaciones de un alfabeto.
+     */
+    private static final class Tables {
+        private char[][] encrypt;
+        private char[][] decrypt;
+        private int[][][] encryptCodePoints;
+        private int[][][] decryptCodePoints;
+
+        private Tables(Alphabet alphabet, IntUnaryOperator[] indexMappings) {
+            int period = indexMappings.length;
+            if (alphabet.isSupplementary()) {
+                Map<IntUnaryOperator, int[][][]> built = new IdentityHashMap<>();
+                encryptCodePoints = new int[2 * period][][];
+                decryptCodePoints = new int[2 * period][][];
+                for (int k = 0; k < period; k++) {
+                    int[][][] pair = built.computeIfAbsent(indexMappings[k], mapping -> {
+                        int[][] table = alphabet.getSupplementaryTranslationTable(mapping);
+                        return new int[][][]{table, invert(table)};
+                    });
+                    encryptCodePoints[2 * k] = encryptCodePoints[2 * k + 1] = pair[0];
+                    decryptCodePoints[2 * k] = decryptCodePoints[2 * k + 1] = pair[1];
+                }
+            } else {
+                Map<IntUnaryOperator, char[][]> built = new IdentityHashMap<>();
+                encrypt = new char[period][];
+                decrypt = new char[period][];
+                for (int k = 0; k < period; k++) {
+                    char[][] pair = built.computeIfAbsent(indexMappings[k], mapping -> {
+                        char[] table = alphabet.getTranslationTable(mapping);
+                        return new char[][]{table, invert(table)};
+                    });
+                    encrypt[k] = pair[0];
+                    decrypt[k] = pair[1];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.nio.ByteBuffer;
+
+/**
+ * La clase {@code Utf8Shifter} aplica una tabla de traduccion de {@link Alphabet} directamente sobre bytes UTF-8,
+ * sin decodificar el texto a {@code char} ni volver a codificarlo.
+ *
+ * <p>Los caracteres ASCII (un byte) se traducen con una tabla de 128 entradas y las secuencias de dos bytes
+ * (ñ, à, ç, «, », ¿...) con una tabla de 2048 entradas indexada por el punto de codigo. Cada entrada guarda ya los
+ * bytes UTF-8 del caracter resultante y su longitud. El resto de bytes (secuencias de tres o cuatro bytes y bytes
+ * invalidos) se copian tal cual.</p>
+ *
+ * <p>Solo admite tablas cuyos caracteres cifrados ocupan uno o dos bytes en UTF-8, es decir, alfabetos sin
+ * caracteres a partir de {@code U+0800}; ver {@link #supports(char[])}.</p>
+ */
+public class Utf8Shifter {
+    private static final int TWO_BYTE_LIMIT = 0x800;
+
+    private final int[] asciiOut;       // Bytes cifrados de cada caracter ASCII
+    private final int[] twoByteOut;     // Bytes cifrados de cada punto de codigo de dos bytes
+
+    /**
+     * Constructor de la clase {@code Utf8Shifter}.
+     *
+     * <p>Codifica cada entrada de la tabla como {@code byte1 | byte2 << 8 | longitud << 16}.</p>
+     *
+     * @param table La tabla de traduccion, por ejemplo {@link Alphabet#getShiftTable(int)}.
+     * @throws IllegalArgumentException Si la tabla traduce caracteres que no caben en dos bytes UTF-8.
+     */
+    public Utf8Shifter(char[] table) {
+        if (!supports(table)) {
+            throw new IllegalArgumentException("El alfabeto contiene caracteres de mas de dos bytes en UTF-8.");
+        }
+        this.asciiOut = new int[0x80];
+        for (int c = 0; c < asciiOut.length; c++) {
+            asciiOut[c] = encode(table[c]);
+        }
+        this.twoByteOut = new int[TWO_BYTE_LIMIT];
+        for (int c = 0; c < twoByteOut.length; c++) {
+            // Los puntos de codigo menores a 0x80 en dos bytes son secuencias invalidas y se copian sin cambios
+            twoByteOut[c] = c < 0x80 ? encodeTwoBytes(c) : encode(table[c]);
+        }
+    }
+
+    /**
+     * Verifica si una tabla de traduccion puede aplicarse a nivel de bytes.
+     *
+     * @param table La tabla de traduccion.
+     * @return {@code true} si todos los caracteres que cambia, y sus resultados, ocupan uno o dos bytes en UTF-8.
+     */
+    public static boolean supports(char[] table) {
+        for (int c = 0; c < table.length; c++) {
+            boolean changes = table[c] != c;
+            if (changes && (c >= TWO_BYTE_LIMIT || table[c] >= TWO_BYTE_LIMIT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calcula cuantos bytes ocupara el resultado de traducir un rango de bytes.
+     *
+     * <p>El resultado puede diferir del tamano original porque un caracter ASCII puede cifrarse como uno de dos
+     * bytes (por ejemplo 'z' como 'à') y viceversa.</p>
+     *
+     * @param in El buffer con el texto UTF-8.
+     * @param from La posicion inicial (incluida).
+     * @param to La posicion final (excluida).
+     * @return El numero de bytes del resultado.
+     */
+    public long outputLength(ByteBuffer in, int from, int to) {
+        long length = 0;
+        for (int i = from; i < to; i++) {
+            int b = in.get(i) & 0xFF;
+            if (b < 0x80) {
+                length += asciiOut[b] >>> 16;
+            } else if (isTwoByteLead(b) && i + 1 < to && isContinuation(in.get(i + 1))) {
+                length += twoByteOut[((b & 0x1F) << 6) | (in.get(++i) & 0x3F)] >>> 16;
+            } else {
+                length++;                                   // Byte que se copia tal cual
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Traduce un rango de bytes y escribe el resultado en otro buffer.
+     *
+     * @param in El buffer con el texto UTF-8.
+     * @param from La posicion inicial (incluida).
+     * @param to La posicion final (excluida).
+     * @param out El buffer de salida; debe tener espacio para {@link #outputLength(ByteBuffer, int, int)} bytes.
+     * @param outPos La posicion de {@code out} donde se empieza a escribir.
+     * @return La posicion de {@code out} siguiente al ultimo byte escrito.
+     */
+    public int transform(ByteBuffer in, int from, int to, ByteBuffer out, int outPos) {
+        for (int i = from; i < to; i++) {
+            int b = in.get(i) & 0xFF;
+            int encoded;
+            if (b < 0x80) {
+                encoded = asciiOut[b];
+            } else if (isTwoByteLead(b) && i + 1 < to && isContinuation(in.get(i + 1))) {
+                encoded = twoByteOut[((b & 0x1F) << 6) | (in.get(++i) & 0x3F)];
+            } else {
+                out.put(outPos++, (byte) b);                // Byte que se copia tal cual
+                continue;
+            }
+            out.put(outPos++, (byte) encoded);
+            if ((encoded >>> 16) == 2) {
+                out.put(outPos++, (byte) (encoded >>> 8));
+            }
+        }
+        return outPos;
+    }
+
+    /**
+     * Verifica si un byte es una continuacion de una secuencia UTF-8 ({@code 10xxxxxx}).
+     *
+     * @param b El byte a verificar.
+     * @return {@code true} si es un byte de continuacion.
+     */
+    public static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static boolean isTwoByteLead(int b) {
+        return (b & 0xE0) == 0xC0;
+    }
+
+    private static int encode(char character) {
+        return character < 0x80 ? character | 1 << 16 : encodeTwoBytes(character);
+    }
+
+    private static int encodeTwoBytes(int codePoint) {
+        int first = 0xC0 | (codePoint >>> 6);
+        int second = 0x80 | (codePoint & 0x3F);
+        return first | second << 8 | 2 << 16;
+    }
+}
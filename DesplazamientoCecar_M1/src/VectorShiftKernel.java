@@ -0,0 +1,122 @@
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * La clase {@code VectorShiftKernel} desplaza caracteres ASCII usando la Vector API ({@code jdk.incubator.vector}),
+ * procesando tantos caracteres por instruccion como permita el procesador (16 con AVX2, 32 con AVX-512).
+ *
+ * <p>En {@link Alphabet} hay tramos ASCII consecutivos (A-N, O-Z, a-n, o-z, 0-9...) cuyo indice es lineal respecto
+ * al caracter. Para cada vector se calcula el indice de los caracteres que caen en esos tramos con comparaciones de
+ * rango y mezclas, se desplaza el indice y se convierte de nuevo a caracter con los mismos tramos. El espacio se
+ * trata como un tramo mas por ser el caracter mas frecuente. Los caracteres de control (saltos de linea,
+ * tabuladores) no estan en el alfabeto y se conservan.</p>
+ *
+ * <p>Si algun caracter del vector no puede resolverse asi (ñ, vocales acentuadas, «», simbolos sueltos o un
+ * resultado fuera de los tramos), ese vector se procesa con la tabla escalar de {@link Alphabet#getShiftTable(int)}.</p>
+ *
+ * <p>Esta clase solo puede cargarse si el modulo {@code jdk.incubator.vector} esta disponible, por lo que solo
+ * debe usarse despues de comprobar {@link Cifrar#VECTOR_API}. Se compila con
+ * {@code --add-modules jdk.incubator.vector} (configurado en {@code .idea/compiler.xml}).</p>
+ */
+public class VectorShiftKernel {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    private final int length;
+    private final short[] runChar;      // Primer caracter de cada tramo
+    private final short[] runIndex;     // Indice en el alfabeto del primer caracter de cada tramo
+    private final short[] runSize;      // Numero de caracteres de cada tramo
+
+    /**
+     * Constructor de la clase {@code VectorShiftKernel}. Busca en el alfabeto los tramos de caracteres ASCII
+     * consecutivos.
+     *
+     * @param alphabet El alfabeto del que se obtienen los tramos.
+     */
+    public VectorShiftKernel(Alphabet alphabet) {
+        String alphabetString = alphabet.getAlphabetString();
+        this.length = alphabetString.length();
+        short[] chars = new short[length];
+        short[] indexes = new short[length];
+        short[] sizes = new short[length];
+        int runs = 0;
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            char first = alphabetString.charAt(i);
+            while (i + 1 < length && first < 0x80 && alphabetString.charAt(i + 1) == first + (i + 1 - start)) {
+                i++;                                        // Extiende el tramo mientras los caracteres sean consecutivos
+            }
+            int size = i - start + 1;
+            if (first < 0x80 && (size > 1 || first == ' ')) {
+                chars[runs] = (short) first;
+                indexes[runs] = (short) start;
+                sizes[runs] = (short) size;
+                runs++;
+            }
+            i++;
+        }
+        this.runChar = Arrays.copyOf(chars, runs);
+        this.runIndex = Arrays.copyOf(indexes, runs);
+        this.runSize = Arrays.copyOf(sizes, runs);
+    }
+
+    /**
+     * Desplaza en el mismo lugar los caracteres de un rango del arreglo.
+     *
+     * @param chars El arreglo de caracteres.
+     * @param from La posicion inicial (incluida).
+     * @param to La posicion final (excluida).
+     * @param table La tabla de traduccion del desplazamiento, usada para los vectores que no se resuelven por tramos.
+     * @param desplazamiento El desplazamiento que corresponde a {@code table}.
+     */
+    public void shift(char[] chars, int from, int to, char[] table, int desplazamiento) {
+        short shift = (short) Math.floorMod(desplazamiento, length);
+        int lanes = SPECIES.length();
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+            ShortVector c = ShortVector.fromCharArray(SPECIES, chars, i);
+            ShortVector index = ShortVector.zero(SPECIES);
+            VectorMask<Short> inSource = SPECIES.maskAll(false);
+            for (int r = 0; r < runChar.length; r++) {             // Caracter -> indice en el alfabeto
+                VectorMask<Short> inRun = inRange(c, runChar[r], runSize[r]);
+                index = index.blend(c.add((short) (runIndex[r] - runChar[r])), inRun);
+                inSource = inSource.or(inRun);
+            }
+            index = index.add(shift);
+            index = index.sub((short) length, index.compare(VectorOperators.GE, (short) length));
+            ShortVector mapped = ShortVector.zero(SPECIES);
+            VectorMask<Short> inTarget = SPECIES.maskAll(false);
+            for (int r = 0; r < runChar.length; r++) {             // Indice desplazado -> caracter
+                VectorMask<Short> inRun = inRange(index, runIndex[r], runSize[r]);
+                mapped = mapped.blend(index.add((short) (runChar[r] - runIndex[r])), inRun);
+                inTarget = inTarget.or(inRun);
+            }
+            VectorMask<Short> lowerToUpper = inRange(c, 'a', 26).and(inRange(mapped, 'A', 26));
+            mapped = mapped.add((short) CASE_OFFSET, lowerToUpper);  // Igual que Alphabet.getCharacter con minusculas
+            VectorMask<Short> resolved = inSource.and(inTarget);
+            VectorMask<Short> control = inRange(c, 0, ' ');
+            if (!resolved.or(control).allTrue()) {
+                for (int j = i; j < i + lanes; j++) {               // Vector con caracteres fuera de los tramos
+                    chars[j] = table[chars[j]];
+                }
+                continue;
+            }
+            c.blend(mapped, resolved).intoCharArray(chars, i);
+        }
+        for (; i < to; i++) {
+            chars[i] = table[chars[i]];
+        }
+    }
+
+    /**
+     * Calcula que carriles del vector estan en el rango {@code [start, start + size)}.
+     */
+    private static VectorMask<Short> inRange(ShortVector v, int start, int size) {
+        return v.compare(VectorOperators.GE, (short) start).and(v.compare(VectorOperators.LT, (short) (start + size)));
+    }
+}
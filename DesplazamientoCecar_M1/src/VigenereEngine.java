@@ -0,0 +1,49 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * La clase {@code VigenereEngine} implementa el cifrado de Vigenere sobre el {@link Alphabet}: el caracter en la
+ * posicion {@code p} del texto se desplaza tantas posiciones como el indice en el alfabeto del caracter
+ * {@code p % clave.length()} de la clave.
+ *
+ * <p>Se precalcula una tabla por caracter de la clave (las claves con letras repetidas comparten tablas), y la
+ * traduccion es exacta: no se aplica la regla de minusculas del cifrado Cesar, por lo que descifrar devuelve siempre
+ * el texto original.</p>
+ * <pre>EJEMPLO: con la clave "BC", "AAAA" se cifra como "BCBC".</pre>
+ */
+public class VigenereEngine extends TableCipherEngine {
+
+    /**
+     * Constructor de la clase {@code VigenereEngine}.
+     *
+     * @param alphabet El alfabeto sobre el que se desplazan los caracteres.
+     * @param key La clave; todos sus caracteres deben pertenecer al alfabeto.
+     * @throws IllegalArgumentException Si la clave esta vacia o tiene caracteres fuera del alfabeto.
+     */
+    public VigenereEngine(Alphabet alphabet, String key) {
+        super(alphabet, mappings(alphabet, key));
+    }
+
+    /**
+     * Construye la permutacion de cada caracter de la clave; los caracteres repetidos comparten la misma funcion.
+     */
+    private static IntUnaryOperator[] mappings(Alphabet alphabet, String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("La clave de Vigenere no puede estar vacia.");
+        }
+        int length = alphabet.size();
+        IntUnaryOperator[] byShift = new IntUnaryOperator[length];   // Funciones ya creadas, por desplazamiento
+        int[] keyCodePoints = key.codePoints().toArray();
+        IntUnaryOperator[] mappings = new IntUnaryOperator[keyCodePoints.length];
+        for (int k = 0; k < keyCodePoints.length; k++) {
+            int shift = alphabet.getIndex(keyCodePoints[k]);
+            if (shift < 0) {
+                throw new IllegalArgumentException("El caracter '" + Character.toString(keyCodePoints[k]) + "' de la clave no esta en el alfabeto.");
+            }
+            if (byShift[shift] == null) {
+                byShift[shift] = i -> (i + shift) % length;
+            }
+            mappings[k] = byShift[shift];
+        }
+        return mappings;
+    }
+}
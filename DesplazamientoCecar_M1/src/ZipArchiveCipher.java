@@ -0,0 +1,225 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * La clase {@code ZipArchiveCipher} cifra o descifra los archivos de un ZIP (o un JAR) sin extraerlos: cada entrada
+ * se lee del {@link ZipFile}, se transforma por bloques y se escribe en la entrada del mismo nombre de un
+ * {@link ZipOutputStream}, en un solo recorrido del archivo de salida y sin archivos intermedios.
+ *
+ * <p>Solo se transforman las entradas que son texto UTF-8 valido. Las demas (clases, imagenes, otros ZIP) se
+ * copian sin cambios, porque decodificarlas reemplazaria sus bytes no validos y no se podrian recuperar; para saberlo,
+ * cada entrada se lee una vez sin escribir nada antes de transformarla. Como el cifrado de un texto UTF-8 valido sigue
+ * siendo valido, al descifrar se copian exactamente las mismas entradas que se copiaron al cifrar.</p>
+ *
+ * <p>Un corpus de miles de archivos pequenos cuesta asi dos aperturas de archivo en lugar de dos por archivo, y
+ * ninguna escritura en el almacen de propiedades. El decodificador, el codificador y los buffers se crean una vez y
+ * se reutilizan en todas las entradas, de modo que una entrada pequena no crea ningun objeto mas que su
+ * {@link ZipEntry} y su transformacion. Cada entrada se transforma como un archivo independiente: los cifrados cuya
+ * clave depende de la posicion del caracter empiezan la clave en cada entrada, igual que con archivos sueltos.</p>
+ *
+ * <p>Las carpetas se copian tal cual y cada entrada conserva su nombre y su fecha. Un objeto no se puede usar desde
+ * varios hilos a la vez.</p>
+ */
+public class ZipArchiveCipher {
+    /**
+     * El separador entre la ruta de un ZIP y el nombre de una de sus entradas en los manifiestos, como en las URL
+     * {@code jar:}.
+     */
+    public static final String ENTRY_SEPARATOR = "!/";
+
+    /**
+     * La cabecera de los manifiestos de un ZIP. Es distinta de la de {@link BatchEncryptor} porque sus rutas son
+     * entradas de un ZIP y no archivos, que {@link IntegrityVerifier} y {@link CipherSearch} no pueden abrir.
+     */
+    public static final String MANIFEST_HEADER = "Original Archive Entry\tEncrypted Archive Entry\tDesplazamiento";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Una entrada de archivo del ZIP y lo que se hizo con ella.
+     */
+    public static final class Entry {
+        private final String name;
+        private final boolean transformed;
+
+        private Entry(String name, boolean transformed) {
+            this.name = name;
+            this.transformed = transformed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@code true} si la entrada se transformo, o {@code false} si no es texto UTF-8 y se copio sin
+         *         cambios.
+         */
+        public boolean isTransformed() {
+            return transformed;
+        }
+    }
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)                // Como InputStreamReader
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetDecoder validator = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)                // Como OutputStreamWriter
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final ByteBuffer bytes = ByteBuffer.wrap(input);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer encoded = ByteBuffer.allocate(3 * BUFFER_SIZE);  // Hasta 3 bytes por caracter
+
+    /**
+     * Transforma todas las entradas de texto de un ZIP y escribe el resultado en otro. La salida se escribe en un
+     * temporal que solo reemplaza al archivo de salida si el proceso termina bien.
+     *
+     * @param inputPath La ruta del ZIP que se leera.
+     * @param outputPath La ruta del ZIP donde se escribira el resultado.
+     * @param transforms Crea la transformacion de cada entrada, que se aplica en el mismo lugar a los caracteres
+     *                   restantes de cada bloque (por ejemplo {@code () -> cifrar.encryptor(engine)}).
+     * @param metrics Las mediciones de la operacion, o {@code null} para no medir.
+     * @return Las entradas de archivo, en orden, o {@code null} si ocurre un error.
+     */
+    public List<Entry> transform(String inputPath, String outputPath, Supplier<Consumer<CharBuffer>> transforms,
+                                 OperationMetrics metrics) {
+        Path target = Paths.get(outputPath);
+        Path temporary = MyFileHandler.temporaryPath(target);
+        List<Entry> result = new ArrayList<>();
+        try {
+            try (ZipFile zip = new ZipFile(inputPath, StandardCharsets.UTF_8);
+                 ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary),
+                         BUFFER_SIZE), StandardCharsets.UTF_8)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    ZipEntry copy = new ZipEntry(entry.getName());      // Sin el tamano ni el CRC del original
+                    copy.setTime(entry.getTime());
+                    out.putNextEntry(copy);
+                    if (!entry.isDirectory()) {
+                        boolean text;
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            text = isUtf8(in);
+                        }
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            if (text) {
+                                transformEntry(in, out, transforms.get(), metrics);
+                            } else {
+                                copyEntry(in, out);
+                            }
+                        }
+                        result.add(new Entry(entry.getName(), text));
+                    }
+                    out.closeEntry();
+                }
+            }
+            MyFileHandler.moveIntoPlace(temporary, target);
+        } catch (IOException | IllegalArgumentException e) {    // IllegalArgumentException: nombre de entrada no valido
+            System.err.println("Error al transformar el archivo ZIP: " + e.getMessage());
+            return null;
+        } finally {
+            MyFileHandler.deleteQuietly(temporary);             // Ya no existe si se movio
+        }
+        return result;
+    }
+
+    /**
+     * Comprueba que una entrada es texto UTF-8 valido, leyendola completa.
+     */
+    private boolean isUtf8(InputStream in) throws IOException {
+        validator.reset();
+        bytes.clear();
+        boolean end = false;
+        while (!end) {
+            int read = in.read(input, bytes.position(), bytes.remaining());
+            end = read < 0;
+            if (read > 0) {
+                bytes.position(bytes.position() + read);
+            }
+            bytes.flip();
+            chars.clear();
+            if (validator.decode(bytes, chars, end).isError() || (end && validator.flush(chars).isError())) {
+                return false;
+            }
+            bytes.compact();
+        }
+        return true;
+    }
+
+    /**
+     * Copia una entrada sin cambios.
+     */
+    private void copyEntry(InputStream in, OutputStream out) throws IOException {
+        int read;
+        while ((read = in.read(input)) != -1) {
+            out.write(input, 0, read);
+        }
+    }
+
+    /**
+     * Transforma una entrada, desde la posicion actual de la entrada hasta su final.
+     */
+    private void transformEntry(InputStream in, OutputStream out, Consumer<CharBuffer> transform,
+                                OperationMetrics metrics) throws IOException {
+        decoder.reset();
+        bytes.clear();
+        boolean end = false;
+        while (!end) {
+            int read = in.read(input, bytes.position(), bytes.remaining());
+            end = read < 0;
+            if (read > 0) {
+                bytes.position(bytes.position() + read);
+                if (metrics != null) {
+                    metrics.addBytes(read);
+                }
+            }
+            bytes.flip();
+            chars.clear();
+            decoder.decode(bytes, chars, end);
+            if (end) {
+                decoder.flush(chars);
+            }
+            bytes.compact();                                    // Una secuencia UTF-8 partida pasa al bloque siguiente
+            chars.flip();
+            if (metrics != null) {
+                metrics.endRead();
+                metrics.count(chars);
+            }
+            transform.accept(chars);
+            if (metrics != null) {
+                metrics.endShift();
+            }
+            encoded.clear();
+            encoder.reset();
+            encoder.encode(chars, encoded, true);
+            encoder.flush(encoded);
+            out.write(encoded.array(), 0, encoded.position());
+            if (metrics != null) {
+                metrics.endWrite();
+            }
+        }
+    }
+}